@@ -0,0 +1,122 @@
+package com.book.keeping.benchmark;
+
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import com.book.keeping.store.LazyTransactionList;
+import com.book.keeping.store.ObservableLedger;
+import com.book.keeping.util.AnalysisEngine;
+import com.book.keeping.util.AnalysisResult;
+import com.book.keeping.util.DataAnalysisUtil;
+import com.book.keeping.util.RollupCube;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 统计分析的基准测试
+ * 同一项统计分别测量基于交易对象列表、列式数据和预汇总（汇总立方体）的实现，
+ * 日期过滤取数据范围中间的一年，另测量在按日期排列的账本和列式数据上二分查找的过滤。
+ */
+@State(Scope.Benchmark)
+public class AnalysisBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+    
+    private List<Transaction> transactions;
+    private TransactionColumns columns;
+    private RollupCube rollupCube;
+    private ObservableLedger ledger;
+    private TransactionColumns sortedColumns;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    
+    @Setup
+    public void setUp() {
+        transactions = BenchmarkData.transactions(rows);
+        columns = TransactionColumns.from(transactions);
+        rollupCube = new RollupCube();
+        rollupCube.reset(columns);
+        ledger = new ObservableLedger(new LazyTransactionList());
+        ledger.insertAllSorted(transactions);
+        sortedColumns = TransactionColumns.from(ledger);
+        startDate = BenchmarkData.START_DATE.plusYears(5);
+        endDate = startDate.plusYears(1).minusDays(1);
+    }
+    
+    @Benchmark
+    public Map<String, Double> categoryExpensesList() {
+        return DataAnalysisUtil.calculateCategoryExpenses(transactions);
+    }
+    
+    @Benchmark
+    public Map<String, Double> categoryExpensesColumns() {
+        return DataAnalysisUtil.calculateCategoryExpenses(columns);
+    }
+    
+    @Benchmark
+    public Map<String, Double> categoryExpensesCube() {
+        return rollupCube.getCategoryExpenses(LocalDate.MIN, LocalDate.MAX);
+    }
+    
+    @Benchmark
+    public Map<String, Map<String, Double>> monthlyStatsList() {
+        return DataAnalysisUtil.calculateMonthlyStats(transactions);
+    }
+    
+    @Benchmark
+    public Map<String, Map<String, Double>> monthlyStatsColumns() {
+        return DataAnalysisUtil.calculateMonthlyStats(columns);
+    }
+    
+    @Benchmark
+    public Map<YearMonth, double[]> monthlyStatsCube() {
+        return rollupCube.getMonthlyTotals(LocalDate.MIN, LocalDate.MAX);
+    }
+    
+    @Benchmark
+    public Map<String, Double> balanceTrendList() {
+        return DataAnalysisUtil.calculateBalanceTrend(transactions);
+    }
+    
+    @Benchmark
+    public Map<String, Double> balanceTrendColumns() {
+        return DataAnalysisUtil.calculateBalanceTrend(columns);
+    }
+    
+    @Benchmark
+    public Map<LocalDate, Double> balanceTrendCube() {
+        return rollupCube.getBalanceTrend(LocalDate.MIN, LocalDate.MAX);
+    }
+    
+    @Benchmark
+    public AnalysisResult analysisEngine() {
+        return AnalysisEngine.analyze(rollupCube, startDate, endDate);
+    }
+    
+    @Benchmark
+    public List<Transaction> filterByDateList() {
+        return DataAnalysisUtil.filterTransactionsByDate(transactions, startDate, endDate);
+    }
+    
+    @Benchmark
+    public TransactionColumns filterByDateColumns() {
+        return DataAnalysisUtil.filterTransactionsByDate(columns, startDate, endDate);
+    }
+    
+    @Benchmark
+    public List<Transaction> filterByDateLedger() {
+        return DataAnalysisUtil.filterTransactionsByDate(ledger, startDate, endDate);
+    }
+    
+    @Benchmark
+    public TransactionColumns filterByDateSortedColumns() {
+        return DataAnalysisUtil.filterTransactionsByDate(sortedColumns, startDate, endDate);
+    }
+} 
\ No newline at end of file
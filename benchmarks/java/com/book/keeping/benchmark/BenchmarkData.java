@@ -0,0 +1,103 @@
+package com.book.keeping.benchmark;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.Transaction;
+import com.book.keeping.util.Constants;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 基准测试用的合成交易数据
+ * 相同的行数总是生成相同的数据：日期均匀分布在最近十年内，
+ * 约五分之一为收入，金额精确到分，分类和来源取自Constants中的预定义列表。
+ */
+final class BenchmarkData {
+    // 固定种子，保证各次运行的数据一致
+    private static final long SEED = 20240101L;
+    
+    // 日期范围：结束日期之前的十年
+    static final LocalDate END_DATE = LocalDate.of(2024, 12, 31);
+    static final LocalDate START_DATE = END_DATE.minusYears(10).plusDays(1);
+    
+    private static final String[] DESCRIPTIONS = {
+            "Monthly salary", "Supermarket", "Electricity bill", "Metro card top-up", "Cinema tickets",
+            "Dinner with friends", "Online shopping", "Pharmacy", "Course fee", "Coffee, bakery"
+    };
+    
+    private BenchmarkData() {
+    }
+    
+    /**
+     * 生成交易记录列表
+     * @param rows 行数
+     * @return 按生成顺序排列（日期无序）的交易记录
+     */
+    static List<Transaction> transactions(int rows) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int days = (int) (END_DATE.toEpochDay() - START_DATE.toEpochDay() + 1);
+        List<String> categories = Constants.CATEGORIES;
+        List<String> sources = Constants.SOURCES;
+        
+        List<Transaction> transactions = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            LocalDate date = START_DATE.plusDays(random.nextInt(days));
+            boolean income = random.nextInt(5) == 0;
+            long cents = income ? 100_000 + random.nextInt(1_000_000) : -(100 + random.nextInt(50_000));
+            transactions.add(Transaction.ofCents(date,
+                    DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)],
+                    cents,
+                    categories.get(random.nextInt(categories.size())),
+                    sources.get(random.nextInt(sources.size())),
+                    random.nextInt(10) == 0));
+        }
+        return transactions;
+    }
+    
+    /**
+     * 将交易记录写成CSV临时文件，格式与CSVImporter读取的格式相同
+     * @param transactions 交易记录
+     * @return 临时文件路径，JVM退出时删除
+     * @throws IOException 写入失败
+     */
+    static Path writeCSV(List<Transaction> transactions) throws IOException {
+        Path file = Files.createTempFile("bookkeeping-bench-", ".csv");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Date,Description,Amount,Category,Source,AI");
+            writer.newLine();
+            for (Transaction transaction : transactions) {
+                writer.write(transaction.getDate().toString());
+                writer.write(',');
+                writeField(writer, transaction.getDescription());
+                writer.write(',');
+                writer.write(Money.format(transaction.getAmountCents()));
+                writer.write(',');
+                writeField(writer, transaction.getCategory());
+                writer.write(',');
+                writeField(writer, transaction.getSource());
+                writer.write(',');
+                writer.write(String.valueOf(transaction.getAiGenerated()));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+    
+    private static void writeField(BufferedWriter writer, String value) throws IOException {
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+} 
\ No newline at end of file
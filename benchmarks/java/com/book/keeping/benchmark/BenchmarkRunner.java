@@ -0,0 +1,47 @@
+package com.book.keeping.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行全部基准测试
+ * 结果以吞吐量（每秒操作数）报告，并通过GC profiler给出每次操作的分配字节数和分配速率，
+ * 同时写入JSON文件，便于与之前的结果对比。
+ * 参数：[类名正则] [行数,行数,...] [结果文件]，例如 "Analysis" "10000,100000" "result.json"
+ */
+public class BenchmarkRunner {
+    
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "";
+        String output = args.length > 2 ? args[2] : "jmh-result.json";
+        
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(BenchmarkRunner.class.getPackage().getName() + ".*" + include + ".*")
+                .mode(Mode.Throughput)
+                .timeUnit(TimeUnit.SECONDS)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .forks(1)
+                // 1000万行的数据集需要较大的堆；启用Vector API以测量向量化的分隔符扫描
+                .jvmArgsAppend("-Xms4g", "-Xmx8g", "--add-modules=jdk.incubator.vector")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(output);
+        if (args.length > 1) {
+            builder.param("rows", args[1].split(","));
+        }
+        
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+} 
\ No newline at end of file
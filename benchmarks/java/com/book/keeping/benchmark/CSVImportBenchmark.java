@@ -0,0 +1,45 @@
+package com.book.keeping.benchmark;
+
+import com.book.keeping.util.CSVImporter;
+import com.book.keeping.util.ParallelCSVImporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * CSV导入的基准测试
+ * 流式导入把每批记录交给Blackhole后丢弃，只测量读取和解析的开销；
+ * 并行导入保留全部记录，与导入对话框的用法一致。
+ */
+@State(Scope.Benchmark)
+public class CSVImportBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+    
+    private String file;
+    
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkData.writeCSV(BenchmarkData.transactions(rows)).toString();
+    }
+    
+    @Benchmark
+    public int streamingImport(Blackhole blackhole) {
+        CSVImporter.ImportResult result = CSVImporter.importFromCSV(file, true, CSVImporter.DEFAULT_CHUNK_SIZE,
+                (chunk, bytesRead, totalBytes) -> {
+                    blackhole.consume(chunk);
+                    return true;
+                });
+        return result.getSuccessCount();
+    }
+    
+    @Benchmark
+    public CSVImporter.ImportResult parallelImport() {
+        return ParallelCSVImporter.importFromCSV(file, true);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,57 @@
+package com.book.keeping.benchmark;
+
+import com.book.keeping.util.DelimiterScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * 分隔符扫描的基准测试
+ * 比较标量实现和Vector API实现在同一份CSV数据上的吞吐量，
+ * 数据整体读入堆外缓冲区，按导入时的块大小逐块扫描。
+ * 未启用jdk.incubator.vector模块时向量实现不可用，vectorScan退化为标量实现。
+ */
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+    
+    private ByteBuffer buffer;
+    private final int[] positions = new int[DelimiterScanner.BLOCK_SIZE];
+    private DelimiterScanner scalar;
+    private DelimiterScanner vector;
+    
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes = Files.readAllBytes(BenchmarkData.writeCSV(BenchmarkData.transactions(rows)));
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        scalar = DelimiterScanner.scalar();
+        vector = DelimiterScanner.vector() != null ? DelimiterScanner.vector() : scalar;
+    }
+    
+    @Benchmark
+    public long scalarScan() {
+        return scan(scalar);
+    }
+    
+    @Benchmark
+    public long vectorScan() {
+        return scan(vector);
+    }
+    
+    private long scan(DelimiterScanner scanner) {
+        long count = 0;
+        int limit = buffer.limit();
+        for (int from = 0; from < limit; from += DelimiterScanner.BLOCK_SIZE) {
+            count += scanner.scan(buffer, from, Math.min(from + DelimiterScanner.BLOCK_SIZE, limit), positions);
+        }
+        return count;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,46 @@
+package com.book.keeping.benchmark;
+
+import com.book.keeping.model.Transaction;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 交易列表按日期排序的基准测试
+ * 与MainViewController.sortTransactionsByDate相同，对ObservableList调用FXCollections.sort按日期降序排列。
+ * 每次调用前重新复制未排序的数据，复制本身也计入结果，可与copyOnly对照扣除。
+ */
+@State(Scope.Benchmark)
+public class SortBenchmark {
+    private static final Comparator<Transaction> BY_DATE_DESC =
+            Comparator.comparing(Transaction::getDate).reversed();
+    
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+    
+    private List<Transaction> transactions;
+    
+    @Setup
+    public void setUp() {
+        transactions = BenchmarkData.transactions(rows);
+    }
+    
+    @Benchmark
+    public ObservableList<Transaction> sortByDate() {
+        ObservableList<Transaction> list = FXCollections.observableArrayList(transactions);
+        FXCollections.sort(list, BY_DATE_DESC);
+        return list;
+    }
+    
+    @Benchmark
+    public ObservableList<Transaction> copyOnly() {
+        return FXCollections.observableArrayList(transactions);
+    }
+} 
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.book.keeping;
 
+import com.book.keeping.controller.MainViewController;
+import com.book.keeping.store.TransactionStore;
 import com.book.keeping.util.Constants;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -7,6 +9,9 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 /**
  * 个人理财管理工具主应用类
  */
@@ -15,6 +20,9 @@ public class FinanceApplication extends Application {
     // 保存主场景的引用以便更新主题
     private static Scene mainScene;
     
+    // 交易数据存储
+    private TransactionStore store;
+    
     @Override
     public void start(Stage primaryStage) {
         try {
@@ -22,6 +30,11 @@ public class FinanceApplication extends Application {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/main-view.fxml"));
             Parent root = loader.load();
             
+            // 打开数据存储并加载已保存的交易记录
+            store = TransactionStore.open(Paths.get(System.getProperty("user.home"), Constants.DATA_DIRECTORY));
+            MainViewController controller = loader.getController();
+            controller.setTransactionStore(store);
+            
             // 创建场景
             mainScene = new Scene(root, 1000, 650);
             
@@ -38,6 +51,18 @@ public class FinanceApplication extends Application {
         }
     }
     
+    @Override
+    public void stop() {
+        // 关闭数据存储
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
     /**
      * 获取主场景
      * @return 主场景
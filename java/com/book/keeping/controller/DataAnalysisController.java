@@ -1,6 +1,12 @@
 package com.book.keeping.controller;
 
 import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import com.book.keeping.util.AnalysisEngine;
+import com.book.keeping.util.AnalysisResult;
+import com.book.keeping.util.ChartDownsampler;
+import com.book.keeping.util.RollupCube;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
@@ -17,7 +23,9 @@ import java.net.URL;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 数据分析视图控制器
@@ -45,8 +53,39 @@ public class DataAnalysisController implements Initializable {
     @FXML
     private Label netBalanceLabel;
     
+    // 月度图表的月份标签，带年份以区分不同年份的同一月份
+    private static final DateTimeFormatter MONTH_LABEL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    
+    // 后台统计线程，所有分析视图共用
+    private static final ExecutorService ANALYSIS_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "data-analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
     private ObservableList<Transaction> transactions;
-    private final DateTimeFormatter monthFormatter = DateTimeFormatter.ofPattern("yyyy-MM");
+    private RollupCube rollupCube;
+    // 最近一次统计请求的序号和任务，只在JavaFX应用线程上访问
+    private long analysisRequest;
+    private Future<?> pendingAnalysis;
+    // 每个序列的最大点数，0表示按图表宽度
+    private int maxChartPoints;
+    
+    /**
+     * 设置随交易列表更新的汇总数据，未设置时由交易数据临时建立
+     * @param rollupCube 按日期、分类和来源汇总的统计
+     */
+    public void setRollupCube(RollupCube rollupCube) {
+        this.rollupCube = rollupCube;
+    }
+    
+    /**
+     * 设置图表每个序列显示的最大点数，超过时降采样
+     * @param maxChartPoints 最大点数，0表示只按图表的像素宽度限制
+     */
+    public void setMaxChartPoints(int maxChartPoints) {
+        this.maxChartPoints = maxChartPoints;
+    }
     
     /**
      * 设置交易数据
@@ -54,6 +93,10 @@ public class DataAnalysisController implements Initializable {
      */
     public void setTransactions(ObservableList<Transaction> transactions) {
         this.transactions = transactions;
+        if (rollupCube == null) {
+            rollupCube = new RollupCube();
+            rollupCube.reset(TransactionColumns.from(transactions));
+        }
         updateAnalysis();
     }
     
@@ -109,29 +152,34 @@ public class DataAnalysisController implements Initializable {
     
     /**
      * 更新分析数据
+     * 统计和图表数据在后台线程中准备，完成后通过一次Platform.runLater整体替换各图表的数据。
+     * 选择新的时间范围时取消尚未开始的计算，已经在计算的旧请求的结果被丢弃。
      */
     private void updateAnalysis() {
         if (transactions == null) return;
 
         LocalDate startDate = getStartDate(timeRangeComboBox.getValue());
         LocalDate endDate = LocalDate.now();
+        RollupCube cube = rollupCube;
+        long request = ++analysisRequest;
+        // 点数上限不超过图表的像素宽度
+        int monthlyBudget = ChartDownsampler.pointBudget(monthlyChart.getWidth(), maxChartPoints);
+        int trendBudget = ChartDownsampler.pointBudget(trendChart.getWidth(), maxChartPoints);
 
-        // 过滤指定日期范围内的交易
-        List<Transaction> filteredTransactions = transactions.stream()
-            .filter(t -> !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate))
-            .collect(Collectors.toList());
-
-        // 更新月度统计
-        updateMonthlyStatistics(filteredTransactions);
-
-        // 更新分类统计
-        updateCategoryStatistics(filteredTransactions);
-
-        // 更新趋势分析
-        updateTrendAnalysis(filteredTransactions);
-
-        // 更新统计信息
-        updateSummaryStatistics(filteredTransactions);
+        if (pendingAnalysis != null) {
+            pendingAnalysis.cancel(false);
+        }
+        pendingAnalysis = ANALYSIS_EXECUTOR.submit(() -> {
+            // 一次遍历日期范围内的汇总格子得到全部统计，与交易笔数无关
+            AnalysisResult result = AnalysisEngine.analyze(cube, startDate, endDate);
+            ChartData chartData = prepareChartData(result, monthlyBudget, trendBudget);
+            Platform.runLater(() -> {
+                // 只显示最新一次请求的结果
+                if (request == analysisRequest) {
+                    showChartData(chartData);
+                }
+            });
+        });
     }
     
     /**
@@ -158,103 +206,82 @@ public class DataAnalysisController implements Initializable {
     }
     
     /**
-     * 更新月度统计图表
-     * @param transactions 交易数据
+     * 后台准备好的图表数据
      */
-    private void updateMonthlyStatistics(List<Transaction> transactions) {
-        // 按月份分组统计收入和支出
-        Map<String, Double> monthlyIncome = new TreeMap<>();
-        Map<String, Double> monthlyExpense = new TreeMap<>();
-
-        for (Transaction t : transactions) {
-            String month = t.getDate().format(DateTimeFormatter.ofPattern("MMM"));
-            double amount = t.getAmount();
-            
-            if (amount > 0) {
-                monthlyIncome.merge(month, amount, Double::sum);
-            } else {
-                monthlyExpense.merge(month, Math.abs(amount), Double::sum);
-            }
-        }
-
-        // 更新图表数据
-        XYChart.Series<String, Number> incomeSeries = monthlyChart.getData().get(0);
-        XYChart.Series<String, Number> expenseSeries = monthlyChart.getData().get(1);
-        
-        incomeSeries.getData().clear();
-        expenseSeries.getData().clear();
-
-        for (String month : monthlyIncome.keySet()) {
-            incomeSeries.getData().add(new XYChart.Data<>(month, monthlyIncome.get(month)));
-            expenseSeries.getData().add(new XYChart.Data<>(month, 
-                monthlyExpense.getOrDefault(month, 0.0)));
-        }
+    private static final class ChartData {
+        final List<XYChart.Data<String, Number>> monthlyIncome = new ArrayList<>();
+        final List<XYChart.Data<String, Number>> monthlyExpense = new ArrayList<>();
+        final List<PieChart.Data> categoryAmounts = new ArrayList<>();
+        final List<XYChart.Data<String, Number>> balanceTrend = new ArrayList<>();
+        double totalIncome;
+        double totalExpense;
     }
-
+    
     /**
-     * 更新分类统计图表
-     * @param transactions 交易数据
+     * 由统计结果生成各图表的数据点，可以在任意线程调用
+     * 点数超过上限时，余额趋势用LTTB降采样，月度柱状图按最小/最大值分桶降采样。
+     * @param result 统计结果
+     * @param monthlyBudget 月度图表的点数上限
+     * @param trendBudget 趋势图表的点数上限
+     * @return 图表数据
      */
-    private void updateCategoryStatistics(List<Transaction> transactions) {
-        // 按类别统计支出
-        Map<String, Double> categoryAmounts = new HashMap<>();
+    private static ChartData prepareChartData(AnalysisResult result, int monthlyBudget, int trendBudget) {
+        ChartData chartData = new ChartData();
         
-        for (Transaction t : transactions) {
-            if (t.getAmount() < 0) {  // 支出
-                categoryAmounts.merge(t.getCategory(), Math.abs(t.getAmount()), Double::sum);
-            }
+        // 月度统计，每个年月一项，时间范围较长时点数可能超过上限
+        int monthCount = result.getMonthCount();
+        double[] incomes = new double[monthCount];
+        for (int i = 0; i < monthCount; i++) {
+            incomes[i] = Math.max(result.getMonthIncome(i), 0);
         }
-
-        // 更新饼图数据
-        ObservableList<PieChart.Data> pieChartData = FXCollections.observableArrayList();
-        for (Map.Entry<String, Double> entry : categoryAmounts.entrySet()) {
-            pieChartData.add(new PieChart.Data(entry.getKey(), entry.getValue()));
+        // 两个序列保留相同的月份
+        for (int i : ChartDownsampler.minMaxBuckets(incomes, monthCount, monthlyBudget)) {
+            String month = result.getMonth(i).format(MONTH_LABEL_FORMATTER);
+            chartData.monthlyIncome.add(new XYChart.Data<>(month, incomes[i]));
+            chartData.monthlyExpense.add(new XYChart.Data<>(month, Math.abs(result.getMonthExpense(i))));
+        }
+        
+        // 分类统计
+        for (Map.Entry<String, Double> entry : result.getCategoryExpenses().entrySet()) {
+            chartData.categoryAmounts.add(new PieChart.Data(entry.getKey(), Math.abs(entry.getValue())));
+        }
+        
+        // 趋势分析
+        int trendSize = result.getTrendSize();
+        double[] days = new double[trendSize];
+        double[] balances = new double[trendSize];
+        for (int i = 0; i < trendSize; i++) {
+            days[i] = result.getTrendDate(i).toEpochDay();
+            balances[i] = result.getTrendBalance(i);
         }
-        categoryChart.setData(pieChartData);
+        for (int i : ChartDownsampler.largestTriangleThreeBuckets(days, balances, trendSize, trendBudget)) {
+            String date = result.getTrendDate(i).format(DateTimeFormatter.ISO_LOCAL_DATE);
+            chartData.balanceTrend.add(new XYChart.Data<>(date, balances[i]));
+        }
+        
+        chartData.totalIncome = result.getTotalIncome();
+        chartData.totalExpense = -result.getTotalExpense();
+        return chartData;
     }
-
+    
     /**
-     * 更新趋势分析图表
-     * @param transactions 交易数据
+     * 显示图表数据，每个序列只替换一次数据
+     * @param chartData 图表数据
      */
-    private void updateTrendAnalysis(List<Transaction> transactions) {
-        // 按日期排序
-        transactions.sort(Comparator.comparing(Transaction::getDate));
-
-        // 计算每日余额
-        Map<String, Double> dailyBalance = new TreeMap<>();
-        double balance = 0.0;
-
-        for (Transaction t : transactions) {
-            String date = t.getDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
-            balance += t.getAmount();  // 直接累加金额
-            dailyBalance.put(date, balance);
-        }
-
-        // 更新趋势图表
-        XYChart.Series<String, Number> balanceSeries = trendChart.getData().get(0);
-        balanceSeries.getData().clear();
-
-        for (Map.Entry<String, Double> entry : dailyBalance.entrySet()) {
-            balanceSeries.getData().add(new XYChart.Data<>(entry.getKey(), entry.getValue()));
-        }
+    private void showChartData(ChartData chartData) {
+        monthlyChart.getData().get(0).getData().setAll(chartData.monthlyIncome);
+        monthlyChart.getData().get(1).getData().setAll(chartData.monthlyExpense);
+        categoryChart.setData(FXCollections.observableArrayList(chartData.categoryAmounts));
+        trendChart.getData().get(0).getData().setAll(chartData.balanceTrend);
+        updateSummaryStatistics(chartData.totalIncome, chartData.totalExpense);
     }
 
     /**
-     * 更新统计信息
-     * @param transactions 交易数据
+     * 显示收入、支出和净余额
+     * @param totalIncome 总收入
+     * @param totalExpense 总支出（正数）
      */
-    private void updateSummaryStatistics(List<Transaction> transactions) {
-        double totalIncome = transactions.stream()
-            .filter(t -> t.getAmount() > 0)  // 收入
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-
-        double totalExpense = transactions.stream()
-            .filter(t -> t.getAmount() < 0)  // 支出
-            .mapToDouble(t -> Math.abs(t.getAmount()))  // 取绝对值
-            .sum();
-
+    private void updateSummaryStatistics(double totalIncome, double totalExpense) {
         double netBalance = totalIncome - totalExpense;
 
         totalIncomeLabel.setText(String.format("¥%.2f", totalIncome));
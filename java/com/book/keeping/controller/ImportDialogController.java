@@ -1,24 +1,38 @@
 package com.book.keeping.controller;
 
+import com.book.keeping.model.Money;
 import com.book.keeping.model.Transaction;
+import com.book.keeping.store.LazyTransactionList;
+import com.book.keeping.store.ObservableLedger;
+import com.book.keeping.util.CSVFormat;
+import com.book.keeping.util.CSVImportTask;
 import com.book.keeping.util.CSVImporter;
+import com.book.keeping.util.ImportOptions;
+import com.book.keeping.util.ImportStage;
+import com.book.keeping.util.TransactionImporter;
+import com.book.keeping.util.TransactionImporters;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Window;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 导入对话框控制器
  */
 public class ImportDialogController {
+    @FXML
+    private DialogPane dialogPane;
+    
     @FXML
     private TextField filePathField;
     
@@ -49,6 +63,24 @@ public class ImportDialogController {
     @FXML
     private CheckBox mergeDataCheckBox;
     
+    @FXML
+    private VBox formatOptionsBox;
+    
+    @FXML
+    private ComboBox<String> encodingComboBox;
+    
+    @FXML
+    private ComboBox<String> delimiterComboBox;
+    
+    @FXML
+    private ProgressBar progressBar;
+    
+    @FXML
+    private Label progressLabel;
+    
+    @FXML
+    private Button stopButton;
+    
     @FXML
     private TextArea formatInfoArea;
     
@@ -58,8 +90,27 @@ public class ImportDialogController {
     @FXML
     private ButtonType cancelButton;
     
+    // 预览时解析的最大记录数
+    private static final int PREVIEW_ROWS = 200;
+    
+    // 编码选项，null表示自动判断
+    private static final String[] ENCODING_NAMES = {"Auto", "UTF-8", "GBK"};
+    private static final Charset[] ENCODINGS = {null, StandardCharsets.UTF_8, CSVFormat.GBK};
+    
+    // 分隔符选项
+    private static final String[] DELIMITER_NAMES = {"Comma (,)", "Semicolon (;)", "Tab", "Pipe (|)"};
+    private static final char[] DELIMITERS = {',', ';', '\t', '|'};
+    
     private File selectedFile;
-    private final ObservableList<Transaction> previewData = FXCollections.observableArrayList();
+    // 按扩展名或文件内容选择的导入格式
+    private TransactionImporter importer;
+    // 预览记录与主窗口的账本一样按日期降序归并，每次预览换用新列表
+    private ObservableLedger previewData = new ObservableLedger(new LazyTransactionList());
+    private final List<Transaction> importedData = new ArrayList<>();
+    private CSVImportTask loadTask;
+    private boolean importFinished;
+    // 导入阶段，例如按规则自动分类
+    private ImportStage importStage;
     
     /**
      * 初始化控制器
@@ -70,9 +121,41 @@ public class ImportDialogController {
         initializePreviewTable();
         
         // 设置表格占位符
-        Label placeholder = new Label("No data to display. Please select a CSV file to preview.");
+        Label placeholder = new Label("No data to display. Please select a file to preview.");
         placeholder.setStyle("-fx-text-fill: gray; -fx-font-style: italic;");
         previewTable.setPlaceholder(placeholder);
+        
+        // 点击导入按钮时先在后台完成完整导入，完成后再关闭对话框
+        Button importActionButton = (Button) dialogPane.lookupButton(importButton);
+        importActionButton.addEventFilter(ActionEvent.ACTION, this::handleImportButtonAction);
+        
+        // 切换是否跳过标题行时重新预览
+        skipHeaderCheckBox.selectedProperty().addListener((obs, oldValue, newValue) -> loadPreviewData());
+        
+        // 编码和分隔符，切换时重新预览
+        encodingComboBox.getItems().setAll(ENCODING_NAMES);
+        encodingComboBox.getSelectionModel().selectFirst();
+        encodingComboBox.valueProperty().addListener((obs, oldValue, newValue) -> loadPreviewData());
+        delimiterComboBox.getItems().setAll(DELIMITER_NAMES);
+        delimiterComboBox.getSelectionModel().selectFirst();
+        delimiterComboBox.valueProperty().addListener((obs, oldValue, newValue) -> loadPreviewData());
+    }
+    
+    /**
+     * 根据选项生成CSV格式
+     * @return CSV格式
+     */
+    private CSVFormat getFormat() {
+        int encoding = Math.max(0, encodingComboBox.getSelectionModel().getSelectedIndex());
+        int delimiter = Math.max(0, delimiterComboBox.getSelectionModel().getSelectedIndex());
+        return CSVFormat.DEFAULT.withDelimiter(DELIMITERS[delimiter]).withCharset(ENCODINGS[encoding]);
+    }
+    
+    /**
+     * @return 当前选项对应的导入选项
+     */
+    private ImportOptions getOptions() {
+        return new ImportOptions(skipHeaderCheckBox.isSelected(), getFormat());
     }
     
     /**
@@ -91,7 +174,7 @@ public class ImportDialogController {
             new SimpleStringProperty(cellData.getValue().getDescription()));
         
         amountColumn.setCellValueFactory(cellData -> 
-            new SimpleStringProperty(String.format("%.2f", cellData.getValue().getAmount())));
+            new SimpleStringProperty(Money.format(cellData.getValue().getAmountCents())));
         
         categoryColumn.setCellValueFactory(cellData -> 
             new SimpleStringProperty(cellData.getValue().getCategory()));
@@ -106,37 +189,110 @@ public class ImportDialogController {
     @FXML
     private void handleBrowseAction() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Select CSV File");
-        fileChooser.getExtensionFilters().add(
-            new FileChooser.ExtensionFilter("CSV Files", "*.csv")
-        );
+        fileChooser.setTitle("Select File");
+        
+        // 全部支持的格式、各个格式和全部文件
+        List<String> allPatterns = new ArrayList<>();
+        List<FileChooser.ExtensionFilter> filters = new ArrayList<>();
+        for (TransactionImporter candidate : TransactionImporters.all()) {
+            List<String> patterns = new ArrayList<>();
+            for (String extension : candidate.getExtensions()) {
+                patterns.add("*." + extension);
+            }
+            allPatterns.addAll(patterns);
+            filters.add(new FileChooser.ExtensionFilter(candidate.getName() + " Files", patterns));
+        }
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("All Supported Files", allPatterns));
+        fileChooser.getExtensionFilters().addAll(filters);
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("All Files", "*.*"));
         
         Window window = browseButton.getScene().getWindow();
-        selectedFile = fileChooser.showOpenDialog(window);
+        File file = fileChooser.showOpenDialog(window);
         
-        if (selectedFile != null) {
+        if (file != null) {
+            selectedFile = file;
+            importer = TransactionImporters.forFile(file.toPath());
             filePathField.setText(selectedFile.getAbsolutePath());
+            
+            // 跳过标题行和分隔符只对CSV有效
+            boolean csv = importer instanceof CSVImporter;
+            skipHeaderCheckBox.setDisable(!csv);
+            delimiterComboBox.setDisable(!csv);
             loadPreviewData();
         }
     }
     
     /**
      * 加载预览数据
+     * 只解析文件开头的若干行，并估算文件的总记录数
      */
     private void loadPreviewData() {
         if (selectedFile == null) {
             return;
         }
         
-        try {
-            CSVImporter.ImportResult result = CSVImporter.importFromCSV(selectedFile.getAbsolutePath(), skipHeaderCheckBox.isSelected());
-            
-            // 更新预览数据
-            previewData.clear();
-            previewData.addAll(result.getTransactions());
-            
-            // 按日期排序
-            sortTransactionsByDate();
+        // 取消正在进行的导入
+        cancelLoading();
+        
+        CSVImporter.PreviewResult result = importer.preview(selectedFile.toPath(), getOptions(), PREVIEW_ROWS);
+        
+        // 与账本相同的归并插入，新列表整体交给表格，表格只收到一次变化
+        List<Transaction> preview = new ArrayList<>(result.getTransactions());
+        if (importStage != null) {
+            importStage.process(preview);
+        }
+        previewData = new ObservableLedger(new LazyTransactionList());
+        previewData.insertAllSorted(preview);
+        previewTable.setItems(previewData);
+        
+        // 显示记录数
+        progressBar.setProgress(0);
+        if (result.isComplete()) {
+            progressLabel.setText(String.format("%s: %,d rows in file", importer.getName(),
+                result.getEstimatedTotalRows()));
+        } else {
+            progressLabel.setText(String.format("%s: showing first %,d of about %,d rows", importer.getName(),
+                previewData.size(), result.getEstimatedTotalRows()));
+        }
+        
+        // 显示错误信息（如果有）
+        if (result.hasErrors()) {
+            showAlert(Alert.AlertType.WARNING, "Import Warnings", 
+                String.format("Found %d errors in the previewed rows. Some records may not be imported correctly.", 
+                result.getErrorCount()));
+        }
+    }
+    
+    /**
+     * 处理导入按钮事件
+     * 完整导入尚未完成时拦截按钮事件，在后台导入整个文件，完成后重新触发按钮关闭对话框
+     * @param event 按钮事件
+     */
+    private void handleImportButtonAction(ActionEvent event) {
+        if (importFinished || selectedFile == null) {
+            return;
+        }
+        event.consume();
+        if (loadTask != null && loadTask.isRunning()) {
+            return;
+        }
+        
+        importedData.clear();
+        CSVImportTask task = new CSVImportTask(selectedFile.getAbsolutePath(), importer, getOptions(),
+            importStage, importedData::addAll);
+        loadTask = task;
+        
+        // 绑定进度显示
+        progressBar.progressProperty().bind(task.progressProperty());
+        progressLabel.textProperty().bind(task.messageProperty());
+        stopButton.disableProperty().bind(task.runningProperty().not());
+        browseButton.disableProperty().bind(task.runningProperty());
+        formatOptionsBox.disableProperty().bind(task.runningProperty());
+        dialogPane.lookupButton(importButton).disableProperty().bind(task.runningProperty());
+        
+        task.setOnSucceeded(e -> {
+            unbindProgress();
+            CSVImporter.ImportResult result = task.getValue();
             
             // 显示错误信息（如果有）
             if (result.hasErrors()) {
@@ -145,18 +301,62 @@ public class ImportDialogController {
                     result.getErrorCount()));
             }
             
-        } catch (Exception e) {
-            e.printStackTrace();
+            importFinished = true;
+            ((Button) dialogPane.lookupButton(importButton)).fire();
+        });
+        
+        task.setOnCancelled(e -> {
+            unbindProgress();
+            importedData.clear();
+            progressBar.setProgress(0);
+            progressLabel.setText("Import stopped");
+        });
+        
+        task.setOnFailed(e -> {
+            unbindProgress();
+            importedData.clear();
+            Throwable error = task.getException();
+            error.printStackTrace();
             showAlert(Alert.AlertType.ERROR, "Import Error", 
-                "Error loading preview data: " + e.getMessage());
+                "Error importing data: " + error.getMessage());
+        });
+        
+        Thread thread = new Thread(task, "csv-importer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 解除进度显示的绑定
+     */
+    private void unbindProgress() {
+        progressBar.progressProperty().unbind();
+        progressLabel.textProperty().unbind();
+    }
+    
+    /**
+     * 处理停止按钮事件
+     */
+    @FXML
+    private void handleStopAction() {
+        cancelLoading();
+    }
+    
+    /**
+     * 取消正在进行的导入
+     */
+    public void cancelLoading() {
+        if (loadTask != null && loadTask.isRunning()) {
+            loadTask.cancel();
         }
     }
     
     /**
-     * 按日期排序交易记录
+     * 设置导入阶段，预览和完整导入的记录都会经过该阶段处理
+     * @param importStage 导入阶段，可以为null
      */
-    private void sortTransactionsByDate() {
-        FXCollections.sort(previewData, Comparator.comparing(Transaction::getDate).reversed());
+    public void setImportStage(ImportStage importStage) {
+        this.importStage = importStage;
     }
     
     /**
@@ -185,12 +385,20 @@ public class ImportDialogController {
     
     /**
      * 获取预览数据
-     * @return 预览数据列表
+     * @return 预览数据列表，只包含文件开头的部分记录
      */
     public List<Transaction> getPreviewData() {
         return previewData;
     }
     
+    /**
+     * 获取导入的数据
+     * @return 完整导入的交易记录，保持文件中的顺序（由账本的insertAllSorted归并到排序位置），用户确认导入前为空
+     */
+    public List<Transaction> getImportedData() {
+        return importedData;
+    }
+    
     /**
      * 显示提示对话框
      * @param alertType 对话框类型
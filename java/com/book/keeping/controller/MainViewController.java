@@ -1,9 +1,23 @@
 package com.book.keeping.controller;
 
+import com.book.keeping.model.Money;
 import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import com.book.keeping.store.LazyTransactionList;
+import com.book.keeping.store.ObservableLedger;
+import com.book.keeping.store.TransactionStore;
+import com.book.keeping.util.CategorizationEngine;
+import com.book.keeping.util.CategoryClassifier;
+import com.book.keeping.util.CategoryRules;
 import com.book.keeping.util.Constants;
+import com.book.keeping.util.ImportStage;
+import com.book.keeping.util.RollupCube;
+import com.book.keeping.util.TransactionSearch;
+import com.book.keeping.util.TransactionAggregates;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -12,30 +26,55 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.Alert.AlertType;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.util.StringConverter;
 
 import java.io.IOException;
+import java.math.RoundingMode;
 import java.net.URL;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 /**
  * 主视图控制器类，处理FXML主界面的用户交互和业务逻辑
  */
 public class MainViewController implements Initializable {
-    // 交易记录列表
-    private final ObservableList<Transaction> transactions = FXCollections.observableArrayList();
+    // 表格单元格使用的格式，只创建一次
+    private static final DateTimeFormatter TABLE_DATE_FORMATTER = DateTimeFormatter.ofPattern(Constants.DATE_FORMAT);
+    private final DecimalFormat amountFormat = createAmountFormat();
+    
+    // 交易记录列表，底层为按需从快照创建对象的列表
+    private LazyTransactionList ledger;
+    private ObservableLedger transactions;
+    
+    // 随交易记录列表变化增量更新的统计
+    private final TransactionAggregates aggregates = new TransactionAggregates();
+    
+    // 随交易记录列表变化更新的汇总数据，供数据分析使用
+    private final RollupCube rollupCube = new RollupCube();
+    
+    // 按描述搜索交易记录
+    private final TransactionSearch search = new TransactionSearch();
+    
+    // 按历史记录为导入的未分类记录预测分类，在后台读取或训练
+    private final CategoryClassifier classifier = new CategoryClassifier();
+    
+    // 交易数据存储
+    private TransactionStore store;
     
     // 表格及其列
     @FXML
     private TableView<Transaction> transactionTable;
     
+    @FXML
+    private TextField searchField;
+    
     @FXML
     private TableColumn<Transaction, LocalDate> dateColumn;
     
@@ -92,6 +131,8 @@ public class MainViewController implements Initializable {
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        setLedger(new LazyTransactionList());
+        
         // 初始化表格
         initializeTable();
         
@@ -103,18 +144,136 @@ public class MainViewController implements Initializable {
         
         // 初始化数据分析菜单项
         dataAnalysisMenuItem.setOnAction(event -> handleAnalysisAction());
+    }
+    
+    /**
+     * 设置交易数据存储并加载已保存的交易记录
+     * @param store 交易数据存储
+     */
+    public void setTransactionStore(TransactionStore store) {
+        this.store = store;
+        
+        // 加载结果已按日期排序，快照中的行在表格显示时才创建对象
+        try {
+            setLedger(store.load());
+        } catch (IOException e) {
+            e.printStackTrace();
+            showAlert(Alert.AlertType.ERROR, "Load Error", "Failed to load saved transactions: " + e.getMessage());
+        }
+        
+        // 更新总余额
+        updateTotalBalance();
+    }
+    
+    /**
+     * 切换底层交易记录列表并重新计算统计
+     * @param ledger 交易记录列表
+     */
+    private void setLedger(LazyTransactionList ledger) {
+        if (transactions != null) {
+            transactions.removeListener(aggregates);
+            transactions.removeListener(rollupCube);
+            transactions.removeListener(search);
+            transactions.removeListener(classifier);
+        }
+        this.ledger = ledger;
+        transactions = new ObservableLedger(ledger);
+        TransactionColumns columns = ledger.toColumns();
+        aggregates.reset(columns);
+        rollupCube.reset(columns);
+        search.reset(ledger);
+        transactions.addListener(aggregates);
+        transactions.addListener(rollupCube);
+        transactions.addListener(search);
+        transactions.addListener(classifier);
+        loadClassifier();
+        buildSearchIndex();
+        applySearch();
+    }
+    
+    /**
+     * 在后台线程中读取与交易记录对应的分类模型，读取失败或不对应时重新训练
+     * 校验值和训练都需要遍历全部记录，不在应用线程上进行；导入对话框不等待，导入任务在加载完成前等待
+     */
+    private void loadClassifier() {
+        LazyTransactionList copy = ledger.copy();
+        long loadId = classifier.beginLoad();
+        Path modelPath = store == null ? null : store.getDirectory().resolve(Constants.CATEGORY_MODEL_FILE);
+        Task<Boolean> loadTask = new Task<Boolean>() {
+            @Override
+            protected Boolean call() throws IOException {
+                return classifier.load(loadId, copy, modelPath);
+            }
+        };
+        // 模型文件损坏时已按交易记录重新训练，其他错误时分类暂时不可用
+        loadTask.setOnFailed(event -> showAlert(Alert.AlertType.WARNING, "Classifier",
+            "Failed to load the category model: " + loadTask.getException().getMessage()));
         
-        // 按日期排序
-        sortTransactionsByDate();
+        Thread thread = new Thread(loadTask, "classifier-load");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 在后台线程中为交易记录建立描述的搜索索引，建立期间继续使用之前的索引
+     * 快照中的行直接读取描述列，不创建交易对象；索引安装后重新应用当前的搜索
+     */
+    private void buildSearchIndex() {
+        LazyTransactionList copy = ledger.copy();
+        long buildId = search.beginBuild();
+        Task<TransactionSearch.Documents> buildTask = new Task<TransactionSearch.Documents>() {
+            @Override
+            protected TransactionSearch.Documents call() {
+                return TransactionSearch.build(copy);
+            }
+        };
+        buildTask.setOnSucceeded(event -> {
+            if (search.install(buildId, buildTask.getValue()) && isSearchActive()) {
+                applySearch();
+            }
+        });
+        buildTask.setOnFailed(event -> {
+            search.cancelBuild(buildId);
+            showAlert(Alert.AlertType.ERROR, "Search Error",
+                "Failed to index transactions: " + buildTask.getException().getMessage());
+        });
+        
+        Thread thread = new Thread(buildTask, "search-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 按搜索框的内容筛选表格，搜索框为空时显示全部记录
+     * 匹配记录的位置由描述的倒排索引给出，表格只在显示到时读取记录
+     */
+    private void applySearch() {
+        String query = searchField.getText();
+        if (query == null || query.trim().isEmpty()) {
+            if (transactionTable.getItems() != transactions) {
+                transactionTable.setItems(transactions);
+            }
+        } else {
+            transactionTable.setItems(transactions.select(search.search(query)));
+            // 被删除的记录较多时重新建立索引
+            if (search.needsRebuild()) {
+                buildSearchIndex();
+            }
+        }
+    }
+    
+    /**
+     * @return 表格是否只显示搜索结果
+     */
+    private boolean isSearchActive() {
+        return transactionTable.getItems() != transactions;
     }
     
     /**
      * 更新总余额
      */
     private void updateTotalBalance() {
-        double total = transactions.stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        double total = aggregates.getTotalBalance();
         
         totalBalanceLabel.setText(String.format("$%.2f", total));
         
@@ -127,6 +286,16 @@ public class MainViewController implements Initializable {
         }
     }
     
+    /**
+     * 创建金额格式，与String.format("%.2f")的输出相同
+     * @return 金额格式，只在JavaFX应用线程上使用
+     */
+    private static DecimalFormat createAmountFormat() {
+        DecimalFormat format = new DecimalFormat("0.00");
+        format.setRoundingMode(RoundingMode.HALF_UP);
+        return format;
+    }
+    
     /**
      * 初始化交易表格
      */
@@ -136,7 +305,7 @@ public class MainViewController implements Initializable {
         transactionTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
         
         // 日期列
-        dateColumn.setCellValueFactory(new PropertyValueFactory<>("date"));
+        dateColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getDate()));
         dateColumn.setCellFactory(column -> new TableCell<Transaction, LocalDate>() {
             @Override
             protected void updateItem(LocalDate date, boolean empty) {
@@ -145,14 +314,14 @@ public class MainViewController implements Initializable {
                     setText(null);
                     setGraphic(null);
                 } else {
-                    setText(date.format(DateTimeFormatter.ofPattern(Constants.DATE_FORMAT)));
+                    setText(TABLE_DATE_FORMATTER.format(date));
                 }
                 setAlignment(Pos.CENTER);
             }
         });
         
         // 描述列
-        descriptionColumn.setCellValueFactory(new PropertyValueFactory<>("description"));
+        descriptionColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getDescription()));
         descriptionColumn.setCellFactory(column -> {
             TableCell<Transaction, String> cell = new TableCell<Transaction, String>() {
                 @Override
@@ -171,7 +340,7 @@ public class MainViewController implements Initializable {
         });
         
         // 金额列
-        amountColumn.setCellValueFactory(new PropertyValueFactory<>("amount"));
+        amountColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getAmount()));
         amountColumn.setCellFactory(column -> new TableCell<Transaction, Double>() {
             @Override
             protected void updateItem(Double amount, boolean empty) {
@@ -181,7 +350,7 @@ public class MainViewController implements Initializable {
                     setGraphic(null);
                     getStyleClass().removeAll("income-cell", "expense-cell");
                 } else {
-                    setText(String.format("%.2f", amount));
+                    setText(amountFormat.format(amount));
                     // 收入显示为橘色，支出显示为绿色（新设计）
                     getStyleClass().removeAll("income-cell", "expense-cell");
                     if (amount > 0) {
@@ -195,7 +364,7 @@ public class MainViewController implements Initializable {
         });
         
         // 分类列
-        categoryColumn.setCellValueFactory(new PropertyValueFactory<>("category"));
+        categoryColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getCategory()));
         categoryColumn.setCellFactory(column -> {
             TableCell<Transaction, String> cell = new TableCell<Transaction, String>() {
                 @Override
@@ -214,7 +383,7 @@ public class MainViewController implements Initializable {
         });
         
         // 来源列
-        sourceColumn.setCellValueFactory(new PropertyValueFactory<>("source"));
+        sourceColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getSource()));
         sourceColumn.setCellFactory(column -> {
             TableCell<Transaction, String> cell = new TableCell<Transaction, String>() {
                 @Override
@@ -233,7 +402,7 @@ public class MainViewController implements Initializable {
         });
         
         // AI标记列
-        aiColumn.setCellValueFactory(new PropertyValueFactory<>("aiGeneratedDisplay"));
+        aiColumn.setCellValueFactory(data -> new ReadOnlyObjectWrapper<>(data.getValue().getAiGeneratedDisplay()));
         aiColumn.setCellFactory(column -> {
             TableCell<Transaction, String> cell = new TableCell<Transaction, String>() {
                 @Override
@@ -263,8 +432,8 @@ public class MainViewController implements Initializable {
             return row;
         });
         
-        // 设置数据源
-        transactionTable.setItems(transactions);
+        // 设置数据源，输入搜索内容时只显示匹配的记录
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> applySearch());
     }
     
     /**
@@ -345,17 +514,19 @@ public class MainViewController implements Initializable {
         try {
             LocalDate date = datePicker.getValue();
             String description = descriptionField.getText().trim();
-            Double amount = Double.parseDouble(amountField.getText().trim());
+            long amountCents = Money.parse(amountField.getText().trim());
             String category = categoryComboBox.getValue();
             String source = sourceComboBox.getValue();
             
-            Transaction transaction = new Transaction(date, description, amount, category, source);
+            Transaction transaction = Transaction.ofCents(date, description, amountCents, category, source, false);
             
-            // 添加到数据列表
-            transactions.add(transaction);
+            // 先写入存储，写入失败时不添加
+            if (store != null) {
+                store.append(transaction);
+            }
             
-            // 按日期排序
-            sortTransactionsByDate();
+            // 按日期插入到数据列表，不重新排序整个列表
+            int index = transactions.insertSorted(transaction);
             
             // 更新总余额
             updateTotalBalance();
@@ -367,8 +538,14 @@ public class MainViewController implements Initializable {
             showAlert(Alert.AlertType.INFORMATION, "Success", "Transaction added successfully!");
             
             // 滚动到最新添加的记录
-            transactionTable.scrollTo(transaction);
-            transactionTable.getSelectionModel().select(transaction);
+            if (isSearchActive()) {
+                applySearch();
+                transactionTable.scrollTo(transaction);
+                transactionTable.getSelectionModel().select(transaction);
+            } else {
+                transactionTable.scrollTo(index);
+                transactionTable.getSelectionModel().select(index);
+            }
         } catch (NumberFormatException e) {
             showAlert(Alert.AlertType.ERROR, "Input Error", "Invalid amount format. Please enter a valid number!");
         } catch (Exception e) {
@@ -376,6 +553,15 @@ public class MainViewController implements Initializable {
         }
     }
     
+    /**
+     * 处理查找菜单事件，将焦点移到搜索框
+     */
+    @FXML
+    private void handleFindAction() {
+        searchField.requestFocus();
+        searchField.selectAll();
+    }
+    
     /**
      * 处理清除按钮事件
      */
@@ -388,6 +574,34 @@ public class MainViewController implements Initializable {
         sourceComboBox.setValue(Constants.SOURCES.get(0));
     }
     
+    /**
+     * 处理保存菜单项事件，将日志合并为快照
+     */
+    @FXML
+    private void handleSaveAction() {
+        if (store == null) {
+            return;
+        }
+        
+        // 模型随数据一起保存
+        Task<Void> saveTask = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                store.compact();
+                classifier.save(store.getDirectory().resolve(Constants.CATEGORY_MODEL_FILE));
+                return null;
+            }
+        };
+        saveTask.setOnSucceeded(event -> showAlert(Alert.AlertType.INFORMATION, "Save", 
+            "Data saved to " + store.getDirectory()));
+        saveTask.setOnFailed(event -> showAlert(Alert.AlertType.ERROR, "Save Error", 
+            "Failed to save data: " + saveTask.getException().getMessage()));
+        
+        Thread thread = new Thread(saveTask, "store-save");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
     /**
      * 处理退出菜单项事件
      */
@@ -416,7 +630,7 @@ public class MainViewController implements Initializable {
             errorMessage.append("- Please enter an amount\n");
         } else {
             try {
-                Double.parseDouble(amountText.trim());
+                Money.parse(amountText.trim());
             } catch (NumberFormatException e) {
                 errorMessage.append("- Invalid amount format. Please enter a valid number\n");
             }
@@ -483,28 +697,17 @@ public class MainViewController implements Initializable {
             
             // 获取控制器
             ImportDialogController controller = loader.getController();
+            controller.setImportStage(createImportStage());
             
             // 显示对话框并等待用户操作
-            dialog.showAndWait().ifPresent(buttonType -> {
+            Optional<ButtonType> dialogResult = dialog.showAndWait();
+            
+            // 关闭对话框时停止尚未完成的导入
+            controller.cancelLoading();
+            
+            dialogResult.ifPresent(buttonType -> {
                 if (buttonType.getButtonData() == ButtonType.OK.getButtonData()) {
-                    // 获取导入的数据
-                    List<Transaction> importedTransactions = controller.getPreviewData();
-                    
-                    // 如果选择合并数据，则添加到现有数据中
-                    if (controller.isMergeData()) {
-                        transactions.addAll(importedTransactions);
-                    } else {
-                        // 否则替换现有数据
-                        transactions.clear();
-                        transactions.addAll(importedTransactions);
-                    }
-                    
-                    // 更新总余额
-                    updateTotalBalance();
-                    
-                    // 显示导入结果
-                    showAlert(AlertType.INFORMATION, "Import Complete", 
-                        String.format("Successfully imported %d transactions.", importedTransactions.size()));
+                    importTransactions(controller.getImportedData(), controller.isMergeData());
                 }
             });
         } catch (IOException e) {
@@ -513,6 +716,98 @@ public class MainViewController implements Initializable {
         }
     }
 
+    /**
+     * 在后台线程中去重并写入存储，完成后在应用线程上归并到交易列表
+     * 去重读取调用时交易列表的副本；先写入存储，写入失败时不修改数据
+     * @param importedData 导入的记录
+     * @param merge 是否与现有数据合并，否则替换现有数据
+     */
+    private void importTransactions(List<Transaction> importedData, boolean merge) {
+        ObservableLedger existing = merge ? new ObservableLedger(ledger.copy()) : null;
+        Task<List<Transaction>> importTask = new Task<List<Transaction>>() {
+            @Override
+            protected List<Transaction> call() throws Exception {
+                // 合并时去掉已有的记录
+                List<Transaction> importedTransactions = merge
+                    ? existing.withoutDuplicates(importedData) : importedData;
+                if (store != null) {
+                    if (merge) {
+                        store.appendAll(importedTransactions);
+                    } else {
+                        store.replaceAll(importedTransactions);
+                    }
+                }
+                return importedTransactions;
+            }
+        };
+        importTask.setOnSucceeded(event -> {
+            List<Transaction> importedTransactions = importTask.getValue();
+            
+            // 如果选择合并数据，则添加到现有数据中
+            if (merge) {
+                transactions.insertAllSorted(importedTransactions);
+            } else {
+                // 否则替换现有数据，换用新列表以免逐条移除旧记录
+                setLedger(new LazyTransactionList());
+                transactions.insertAllSorted(importedTransactions);
+            }
+            if (isSearchActive()) {
+                applySearch();
+            }
+            saveClassifier();
+            
+            // 更新总余额
+            updateTotalBalance();
+            
+            // 显示导入结果
+            int skipped = importedData.size() - importedTransactions.size();
+            String message = String.format("Successfully imported %d transactions.", importedTransactions.size());
+            if (skipped > 0) {
+                message += String.format("\nSkipped %d duplicate transactions.", skipped);
+            }
+            showAlert(AlertType.INFORMATION, "Import Complete", message);
+        });
+        importTask.setOnFailed(event -> showAlert(AlertType.ERROR, "Import Error", 
+            "Failed to save imported transactions: " + importTask.getException().getMessage()));
+        
+        Thread thread = new Thread(importTask, "store-import");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 创建导入阶段：先按数据目录下的分类规则，再用分类模型为未分类的记录确定分类
+     * @return 导入阶段
+     */
+    private ImportStage createImportStage() {
+        if (store == null) {
+            return classifier;
+        }
+        CategorizationEngine rules = null;
+        try {
+            rules = CategorizationEngine.compile(
+                CategoryRules.load(store.getDirectory().resolve(Constants.CATEGORY_RULES_FILE)));
+        } catch (IOException e) {
+            showAlert(AlertType.WARNING, "Category Rules", 
+                "Failed to load category rules, only the learned model will be used: " + e.getMessage());
+        }
+        return ImportStage.of(rules, classifier);
+    }
+    
+    /**
+     * 将分类模型保存到数据目录
+     */
+    private void saveClassifier() {
+        if (store == null) {
+            return;
+        }
+        try {
+            classifier.save(store.getDirectory().resolve(Constants.CATEGORY_MODEL_FILE));
+        } catch (IOException e) {
+            showAlert(Alert.AlertType.ERROR, "Save Error", "Failed to save the category model: " + e.getMessage());
+        }
+    }
+
     @FXML
     private void handleDataAnalysisAction() {
         showAlert(Alert.AlertType.INFORMATION, "Data Analysis", 
@@ -550,6 +845,8 @@ public class MainViewController implements Initializable {
             
             // 获取控制器并设置数据
             DataAnalysisController controller = loader.getController();
+            controller.setRollupCube(rollupCube);
+            controller.setMaxChartPoints(Constants.MAX_CHART_POINTS);
             controller.setTransactions(transactions);
             
             // 创建新窗口
@@ -567,11 +864,4 @@ public class MainViewController implements Initializable {
     private void showError(String title, String message) {
         showAlert(Alert.AlertType.ERROR, title, message);
     }
-
-    /**
-     * 按日期排序交易记录
-     */
-    private void sortTransactionsByDate() {
-        FXCollections.sort(transactions, Comparator.comparing(Transaction::getDate).reversed());
-    }
 } 
\ No newline at end of file
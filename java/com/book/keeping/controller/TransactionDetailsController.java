@@ -1,5 +1,6 @@
 package com.book.keeping.controller;
 
+import com.book.keeping.model.Money;
 import com.book.keeping.model.Transaction;
 import com.book.keeping.util.Constants;
 import javafx.fxml.FXML;
@@ -45,13 +46,13 @@ public class TransactionDetailsController {
         descriptionLabel.setText(transaction.getDescription());
         
         // 设置金额
-        String amountText = String.format("%.2f", transaction.getAmount());
+        String amountText = Money.format(transaction.getAmountCents());
         amountLabel.setText(amountText);
         
         // 根据金额设置样式
-        if (transaction.getAmount() > 0) {
+        if (transaction.getAmountCents() > 0) {
             amountLabel.getStyleClass().add("positive-amount");
-        } else if (transaction.getAmount() < 0) {
+        } else if (transaction.getAmountCents() < 0) {
             amountLabel.getStyleClass().add("negative-amount");
         }
         
@@ -0,0 +1,83 @@
+package com.book.keeping.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 自动分类规则
+ * 规则中给出的各项条件全部满足时，交易记录归入规则的分类；未给出的条件不检查。
+ * 关键词按不区分大小写的子串匹配，任意一个出现即满足；正则表达式在描述中查找；
+ * 金额范围以分为单位，包含两端，没有下限或上限时为Long.MIN_VALUE或Long.MAX_VALUE；
+ * 来源不区分大小写比较。
+ */
+public class CategoryRule {
+    private final String category;
+    private final List<String> keywords;
+    private final Pattern pattern;
+    private final long minAmountCents;
+    private final long maxAmountCents;
+    private final String source;
+    
+    /**
+     * @param category 匹配时设置的分类
+     * @param keywords 关键词，空列表表示不检查
+     * @param pattern 描述的正则表达式，可以为null
+     * @param minAmountCents 以分为单位的最小金额（包含），没有下限时为Long.MIN_VALUE
+     * @param maxAmountCents 以分为单位的最大金额（包含），没有上限时为Long.MAX_VALUE
+     * @param source 来源，可以为null
+     */
+    public CategoryRule(String category, List<String> keywords, Pattern pattern,
+                        long minAmountCents, long maxAmountCents, String source) {
+        this.category = category;
+        this.keywords = Collections.unmodifiableList(keywords);
+        this.pattern = pattern;
+        this.minAmountCents = minAmountCents;
+        this.maxAmountCents = maxAmountCents;
+        this.source = source;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    public List<String> getKeywords() {
+        return keywords;
+    }
+    
+    public Pattern getPattern() {
+        return pattern;
+    }
+    
+    public long getMinAmountCents() {
+        return minAmountCents;
+    }
+    
+    public long getMaxAmountCents() {
+        return maxAmountCents;
+    }
+    
+    /**
+     * @param amountCents 以分为单位的金额
+     * @return 金额是否在规则的范围内
+     */
+    public boolean matchesAmount(long amountCents) {
+        return amountCents >= minAmountCents && amountCents <= maxAmountCents;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    @Override
+    public String toString() {
+        return "CategoryRule{" +
+                "category='" + category + '\'' +
+                ", keywords=" + keywords +
+                ", pattern=" + pattern +
+                ", minAmount=" + (minAmountCents == Long.MIN_VALUE ? "none" : Money.format(minAmountCents)) +
+                ", maxAmount=" + (maxAmountCents == Long.MAX_VALUE ? "none" : Money.format(maxAmountCents)) +
+                ", source='" + source + '\'' +
+                '}';
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,116 @@
+package com.book.keeping.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 定点金额运算
+ * 金额以long保存为最小货币单位（分），小数位数为SCALE。加减和比较都是精确的整数运算，
+ * 不装箱也不创建对象；只有解析、格式化和与double互相转换时才涉及小数。
+ */
+public final class Money {
+    // 小数位数
+    public static final int SCALE = 2;
+    // 每个货币单位包含的最小单位数
+    public static final long UNIT = 100;
+    
+    // 不带指数时可以直接累加而不溢出的最大整数位数
+    private static final int MAX_DIGITS = 18;
+    
+    private Money() {
+    }
+    
+    /**
+     * 将double金额转换为最小单位
+     * @param amount 金额
+     * @return 四舍五入后的最小单位数
+     */
+    public static long fromDouble(double amount) {
+        return Math.round(amount * UNIT);
+    }
+    
+    /**
+     * 将最小单位转换为double金额，只用于显示和图表
+     * @param minorUnits 最小单位数
+     * @return 金额
+     */
+    public static double toDouble(long minorUnits) {
+        return minorUnits / (double) UNIT;
+    }
+    
+    /**
+     * 解析十进制金额文本，不经过double
+     * 支持可选的正负号和小数点，小数位数超过SCALE时四舍五入；带指数的写法交给BigDecimal处理
+     * @param text 金额文本
+     * @return 最小单位数
+     * @throws NumberFormatException 格式错误或超出范围时抛出
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        int fraction = -1;
+        boolean roundUp = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (fraction < 0) {
+                    if (++digits > MAX_DIGITS - SCALE) {
+                        throw new NumberFormatException("Amount out of range: " + text);
+                    }
+                    units = units * 10 + (c - '0');
+                } else if (fraction < SCALE) {
+                    units = units * 10 + (c - '0');
+                    fraction++;
+                    digits++;
+                } else {
+                    // 超出的第一位小数决定进位
+                    if (fraction == SCALE) {
+                        roundUp = c >= '5';
+                        fraction++;
+                    }
+                    digits++;
+                }
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else if (c == 'e' || c == 'E') {
+                return parseExponent(text);
+            } else {
+                throw new NumberFormatException("Invalid amount: " + text);
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid amount: " + text);
+        }
+        for (int f = Math.max(fraction, 0); f < SCALE; f++) {
+            units *= 10;
+        }
+        if (roundUp) {
+            units++;
+        }
+        return negative ? -units : units;
+    }
+    
+    private static long parseExponent(CharSequence text) {
+        try {
+            return new BigDecimal(text.toString()).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+    
+    /**
+     * 格式化为带SCALE位小数的文本，例如-12.30
+     * @param minorUnits 最小单位数
+     * @return 金额文本
+     */
+    public static String format(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE).toPlainString();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,197 @@
+package com.book.keeping.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 全局字典，为分类、来源这类取值很少的字段分配紧凑的编号并保存唯一的字符串实例
+ * 编号按首次出现的顺序分配，在进程内不变，可以直接作为数组下标做分组统计；null的编号为NO_ID。
+ * 可以按字符串或UTF-8字节查找，按字节查找命中时不创建字符串。
+ * 查找不加锁，只有加入新值时加锁；条目的字段都是final，发布后对所有线程可见。
+ */
+public final class SymbolTable {
+    public static final int NO_ID = -1;
+    
+    // 全部交易记录共用的分类和来源字典
+    public static final SymbolTable CATEGORIES = new SymbolTable();
+    public static final SymbolTable SOURCES = new SymbolTable();
+    
+    private static final int INITIAL_SLOTS = 64;
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+    
+    /**
+     * 字典条目
+     */
+    private static final class Symbol {
+        final int id;
+        final String name;
+        final byte[] utf8;
+        final int byteHash;
+        
+        Symbol(int id, String name) {
+            this.id = id;
+            this.name = name;
+            this.utf8 = name.getBytes(StandardCharsets.UTF_8);
+            this.byteHash = hash(utf8, 0, utf8.length);
+        }
+    }
+    
+    // 按String.hashCode和按UTF-8字节哈希的开放寻址表，以及按编号排列的条目
+    private volatile Symbol[] byName = new Symbol[INITIAL_SLOTS];
+    private volatile Symbol[] byBytes = new Symbol[INITIAL_SLOTS];
+    private volatile Symbol[] byId = new Symbol[INITIAL_SLOTS];
+    private volatile int size;
+    
+    /**
+     * @param name 字符串，可以为null
+     * @return 编号，不存在时加入字典；null返回NO_ID
+     */
+    public int id(String name) {
+        if (name == null) {
+            return NO_ID;
+        }
+        Symbol symbol = find(name);
+        return symbol != null ? symbol.id : add(name).id;
+    }
+    
+    /**
+     * @param name 字符串，可以为null
+     * @return 字典中的唯一实例，不存在时加入字典
+     */
+    public String canonical(String name) {
+        if (name == null) {
+            return null;
+        }
+        Symbol symbol = find(name);
+        return symbol != null ? symbol.name : add(name).name;
+    }
+    
+    /**
+     * 按UTF-8字节查找，命中时直接返回已有实例
+     * @param buffer 缓冲区，按绝对位置读取
+     * @param start 起始位置（包含）
+     * @param end 结束位置（不包含）
+     * @return 字典中的唯一实例，不存在时解码后加入字典
+     */
+    public String canonical(ByteBuffer buffer, int start, int end) {
+        int hash = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * FNV_PRIME;
+        }
+        Symbol[] slots = byBytes;
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            Symbol symbol = slots[slot];
+            if (symbol.byteHash == hash && equals(symbol.utf8, buffer, start, end)) {
+                return symbol.name;
+            }
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return canonical(new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * @param id 编号
+     * @return 字符串，编号为NO_ID时返回null
+     */
+    public String name(int id) {
+        if (id == NO_ID) {
+            return null;
+        }
+        Symbol[] symbols = byId;
+        Symbol symbol = id < symbols.length ? symbols[id] : null;
+        if (symbol == null) {
+            // 其他线程刚加入的条目可能尚不可见
+            synchronized (this) {
+                symbol = byId[id];
+            }
+        }
+        return symbol.name;
+    }
+    
+    /**
+     * @return 已分配的编号个数，所有编号都小于该值
+     */
+    public int size() {
+        return size;
+    }
+    
+    private Symbol find(String name) {
+        Symbol[] slots = byName;
+        int mask = slots.length - 1;
+        for (int slot = mix(name.hashCode()) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            Symbol symbol = slots[slot];
+            if (symbol.name == name || symbol.name.equals(name)) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+    
+    private synchronized Symbol add(String name) {
+        Symbol symbol = find(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        int id = size;
+        symbol = new Symbol(id, name);
+        if (id == byId.length) {
+            byId = Arrays.copyOf(byId, id * 2);
+        }
+        byId[id] = symbol;
+        // 装载因子超过一半时扩容重建
+        if ((id + 1) * 2 > byName.length) {
+            Symbol[] names = new Symbol[byName.length * 2];
+            Symbol[] bytes = new Symbol[byBytes.length * 2];
+            for (int i = 0; i < id; i++) {
+                insert(names, byId[i].name.hashCode(), byId[i]);
+                insert(bytes, byId[i].byteHash, byId[i]);
+            }
+            insert(names, name.hashCode(), symbol);
+            insert(bytes, symbol.byteHash, symbol);
+            byName = names;
+            byBytes = bytes;
+        } else {
+            insert(byName, name.hashCode(), symbol);
+            insert(byBytes, symbol.byteHash, symbol);
+        }
+        size = id + 1;
+        return symbol;
+    }
+    
+    private static void insert(Symbol[] slots, int hash, Symbol symbol) {
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = symbol;
+    }
+    
+    private static boolean equals(byte[] bytes, ByteBuffer buffer, int start, int end) {
+        if (bytes.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+} 
\ No newline at end of file
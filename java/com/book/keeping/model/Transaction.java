@@ -4,11 +4,12 @@ import java.time.LocalDate;
 
 /**
  * 交易数据模型类
+ * 金额以最小货币单位（分）保存为long，见Money
  */
 public class Transaction {
     private LocalDate date;
     private String description;
-    private Double amount;
+    private long amountCents;
     private String category;
     private String source;
     private Boolean aiGenerated;
@@ -22,7 +23,7 @@ public class Transaction {
     public Transaction(LocalDate date, String description, Double amount, String category, String source) {
         this.date = date;
         this.description = description;
-        this.amount = amount;
+        this.amountCents = amount == null ? 0 : Money.fromDouble(amount);
         this.category = category;
         this.source = source;
         this.aiGenerated = false;
@@ -32,12 +33,34 @@ public class Transaction {
     public Transaction(LocalDate date, String description, Double amount, String category, String source, Boolean aiGenerated) {
         this.date = date;
         this.description = description;
-        this.amount = amount;
+        this.amountCents = amount == null ? 0 : Money.fromDouble(amount);
         this.category = category;
         this.source = source;
         this.aiGenerated = aiGenerated;
     }
 
+    /**
+     * 以最小货币单位创建交易记录，金额不经过double
+     * @param date 日期
+     * @param description 描述
+     * @param amountCents 金额（分）
+     * @param category 分类
+     * @param source 来源
+     * @param aiGenerated 是否为AI生成的分类
+     * @return 交易记录
+     */
+    public static Transaction ofCents(LocalDate date, String description, long amountCents, String category,
+                                      String source, boolean aiGenerated) {
+        Transaction transaction = new Transaction();
+        transaction.date = date;
+        transaction.description = description;
+        transaction.amountCents = amountCents;
+        transaction.category = category;
+        transaction.source = source;
+        transaction.aiGenerated = aiGenerated;
+        return transaction;
+    }
+
     // Getter和Setter方法
     public LocalDate getDate() {
         return date;
@@ -56,11 +79,19 @@ public class Transaction {
     }
 
     public Double getAmount() {
-        return amount;
+        return Money.toDouble(amountCents);
     }
 
     public void setAmount(Double amount) {
-        this.amount = amount;
+        this.amountCents = amount == null ? 0 : Money.fromDouble(amount);
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
     }
 
     public String getCategory() {
@@ -97,7 +128,7 @@ public class Transaction {
         return "Transaction{" +
                 "date=" + date +
                 ", description='" + description + '\'' +
-                ", amount=" + amount +
+                ", amount=" + Money.format(amountCents) +
                 ", category='" + category + '\'' +
                 ", source='" + source + '\'' +
                 ", aiGenerated=" + aiGenerated +
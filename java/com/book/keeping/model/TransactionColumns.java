@@ -0,0 +1,247 @@
+package com.book.keeping.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 列式交易数据，供统计分析使用
+ * 每一列是一个基本类型数组：日期(epoch day)、金额(分)、分类编号、来源编号和标记。
+ * 分类和来源使用全局字典SymbolTable的编号，null编号为NO_ID。每行约21字节，
+ * 遍历时不需要拆箱，也不会创建对象。描述不参与统计，因此不保存。
+ */
+public class TransactionColumns {
+    public static final int NO_ID = SymbolTable.NO_ID;
+    public static final byte FLAG_AI_GENERATED = 1;
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private int[] epochDays;
+    private long[] amountCents;
+    private int[] categoryIds;
+    private int[] sourceIds;
+    private byte[] flags;
+    private int size;
+    // 日期列是否按升序/降序排列，追加时维护，排序的列按日期过滤时二分查找
+    private boolean ascending = true;
+    private boolean descending = true;
+    
+    // 默认构造函数
+    public TransactionColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param capacity 初始容量
+     */
+    public TransactionColumns(int capacity) {
+        capacity = Math.max(capacity, DEFAULT_CAPACITY);
+        epochDays = new int[capacity];
+        amountCents = new long[capacity];
+        categoryIds = new int[capacity];
+        sourceIds = new int[capacity];
+        flags = new byte[capacity];
+    }
+    
+    /**
+     * 由交易记录列表创建列式数据
+     * @param transactions 交易记录列表
+     * @return 列式数据，行顺序与列表一致
+     */
+    public static TransactionColumns from(List<Transaction> transactions) {
+        TransactionColumns columns = new TransactionColumns(transactions.size());
+        for (Transaction transaction : transactions) {
+            columns.add(transaction);
+        }
+        return columns;
+    }
+    
+    /**
+     * 追加一行
+     * @param transaction 交易记录
+     */
+    public void add(Transaction transaction) {
+        add((int) transaction.getDate().toEpochDay(), transaction.getAmountCents(),
+                transaction.getCategory(), transaction.getSource(),
+                Boolean.TRUE.equals(transaction.getAiGenerated()));
+    }
+    
+    /**
+     * 追加一行
+     * @param epochDay 日期的epoch day
+     * @param cents 以分为单位的金额
+     * @param category 分类，可以为null
+     * @param source 来源，可以为null
+     * @param aiGenerated 是否为AI生成的分类
+     */
+    public void add(int epochDay, long cents, String category, String source, boolean aiGenerated) {
+        if (size == epochDays.length) {
+            grow();
+        }
+        if (size > 0) {
+            int previous = epochDays[size - 1];
+            ascending &= previous <= epochDay;
+            descending &= previous >= epochDay;
+        }
+        epochDays[size] = epochDay;
+        amountCents[size] = cents;
+        categoryIds[size] = SymbolTable.CATEGORIES.id(category);
+        sourceIds[size] = SymbolTable.SOURCES.id(source);
+        flags[size] = aiGenerated ? FLAG_AI_GENERATED : 0;
+        size++;
+    }
+    
+    /**
+     * 选出日期在指定范围内的行
+     * 日期列有序时（如由按日期排列的账本生成）二分查找范围的首尾，整段复制，耗时O(log n + k)；
+     * 否则逐行比较。
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 新的列式数据
+     */
+    public TransactionColumns filterByDate(LocalDate startDate, LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        if (ascending || descending) {
+            // 降序时范围的首行是第一个不晚于结束日期的行
+            int first = ascending ? firstDayAtLeast(from) : firstDayAtMost(to);
+            int last = ascending ? firstDayAtLeast(to + 1) : firstDayAtMost(from - 1);
+            return slice(first, Math.max(first, last));
+        }
+        TransactionColumns result = new TransactionColumns();
+        for (int i = 0; i < size; i++) {
+            int day = epochDays[i];
+            if (day >= from && day <= to) {
+                if (result.size == result.epochDays.length) {
+                    result.grow();
+                }
+                int row = result.size++;
+                result.epochDays[row] = day;
+                result.amountCents[row] = amountCents[i];
+                result.categoryIds[row] = categoryIds[i];
+                result.sourceIds[row] = sourceIds[i];
+                result.flags[row] = flags[i];
+            }
+        }
+        result.ascending = false;
+        result.descending = false;
+        return result;
+    }
+    
+    // 升序的日期列中第一个不早于day的行
+    private int firstDayAtLeast(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // 降序的日期列中第一个不晚于day的行
+    private int firstDayAtMost(long day) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] > day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    // 复制[from, to)的行，结果保持原有顺序
+    private TransactionColumns slice(int from, int to) {
+        int count = to - from;
+        TransactionColumns result = new TransactionColumns(count);
+        System.arraycopy(epochDays, from, result.epochDays, 0, count);
+        System.arraycopy(amountCents, from, result.amountCents, 0, count);
+        System.arraycopy(categoryIds, from, result.categoryIds, 0, count);
+        System.arraycopy(sourceIds, from, result.sourceIds, 0, count);
+        System.arraycopy(flags, from, result.flags, 0, count);
+        result.size = count;
+        result.ascending = ascending;
+        result.descending = descending;
+        return result;
+    }
+    
+    private void grow() {
+        int capacity = epochDays.length + (epochDays.length >> 1);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        amountCents = Arrays.copyOf(amountCents, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+        sourceIds = Arrays.copyOf(sourceIds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+    
+    /**
+     * 将金额转换为分
+     * @param amount 金额
+     * @return 四舍五入后的分
+     */
+    public static long toCents(double amount) {
+        return Money.fromDouble(amount);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+    
+    public long getAmountCents(int row) {
+        return amountCents[row];
+    }
+    
+    public int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+    
+    public int getSourceId(int row) {
+        return sourceIds[row];
+    }
+    
+    public boolean isAiGenerated(int row) {
+        return (flags[row] & FLAG_AI_GENERATED) != 0;
+    }
+    
+    /**
+     * @return 分类编号的个数，所有分类编号都小于该值
+     */
+    public int getCategoryCount() {
+        return SymbolTable.CATEGORIES.size();
+    }
+    
+    /**
+     * @param id 分类编号
+     * @return 分类名称，编号为NO_ID时返回null
+     */
+    public String getCategory(int id) {
+        return SymbolTable.CATEGORIES.name(id);
+    }
+    
+    /**
+     * @return 来源编号的个数，所有来源编号都小于该值
+     */
+    public int getSourceCount() {
+        return SymbolTable.SOURCES.size();
+    }
+    
+    /**
+     * @param id 来源编号
+     * @return 来源名称，编号为NO_ID时返回null
+     */
+    public String getSource(int id) {
+        return SymbolTable.SOURCES.name(id);
+    }
+} 
\ No newline at end of file
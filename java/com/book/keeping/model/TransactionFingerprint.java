@@ -0,0 +1,90 @@
+package com.book.keeping.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 交易记录的64位指纹，用于导入时识别重复记录
+ * 指纹由日期、描述、金额（分）和来源计算，分类和AI标记不参与，
+ * 因此同一条银行流水重新导入后即使分类不同也视为重复。
+ * 描述按UTF-8字节计算，快照中的行可以直接读取字节而不必创建字符串。
+ */
+public final class TransactionFingerprint {
+    // FNV-1a参数
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // 描述为null时的哈希值
+    private static final long NULL_DESCRIPTION = 0x9e3779b97f4a7c15L;
+    private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+    
+    private TransactionFingerprint() {
+    }
+    
+    /**
+     * @param transaction 交易记录
+     * @return 指纹
+     */
+    public static long of(Transaction transaction) {
+        return of((int) transaction.getDate().toEpochDay(), transaction.getAmountCents(),
+                descriptionHash(transaction.getDescription()), transaction.getSource());
+    }
+    
+    /**
+     * @param epochDay 日期的epoch day
+     * @param cents 以分为单位的金额
+     * @param descriptionHash 描述的哈希值，由descriptionHash计算
+     * @param source 来源，可以为null
+     * @return 指纹
+     */
+    public static long of(int epochDay, long cents, long descriptionHash, String source) {
+        long hash = descriptionHash;
+        hash = hash * MULTIPLIER + epochDay;
+        hash = hash * MULTIPLIER + cents;
+        hash = hash * MULTIPLIER + (source == null ? 0 : source.hashCode());
+        // MurmurHash3的64位收尾混合
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+    
+    /**
+     * @param description 描述，可以为null
+     * @return 描述UTF-8字节的哈希值
+     */
+    public static long descriptionHash(String description) {
+        if (description == null) {
+            return NULL_DESCRIPTION;
+        }
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        long hash = FNV_OFFSET;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    /**
+     * 计算缓冲区中一段UTF-8描述的哈希值，结果与descriptionHash(String)相同
+     * @param buffer 缓冲区，按绝对位置读取
+     * @param offset 起始位置
+     * @param length 字节数
+     * @return 哈希值
+     */
+    public static long descriptionHash(ByteBuffer buffer, int offset, int length) {
+        long hash = FNV_OFFSET;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    /**
+     * @return 描述为null时的哈希值
+     */
+    public static long nullDescriptionHash() {
+        return NULL_DESCRIPTION;
+    }
+} 
\ No newline at end of file
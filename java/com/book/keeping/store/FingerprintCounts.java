@@ -0,0 +1,81 @@
+package com.book.keeping.store;
+
+/**
+ * 以64位指纹为键的计数集合
+ * 开放寻址、线性探测，键和计数分别保存在long和int数组中，每个元素约12字节，不创建包装对象。
+ * 指纹0用作空槽标记，加入时映射为1。
+ */
+final class FingerprintCounts {
+    private long[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+    
+    /**
+     * @param expected 预计的不同指纹个数
+     */
+    FingerprintCounts(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+    }
+    
+    /**
+     * 指纹的计数加一
+     * @param fingerprint 指纹
+     */
+    void add(long fingerprint) {
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                rehash();
+                slot = slot(key);
+            }
+        }
+        counts[slot]++;
+    }
+    
+    /**
+     * 指纹的计数大于0时减一
+     * @param fingerprint 指纹
+     * @return 减一前计数是否大于0
+     */
+    boolean remove(long fingerprint) {
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        int slot = slot(key);
+        if (keys[slot] == 0 || counts[slot] == 0) {
+            return false;
+        }
+        counts[slot]--;
+        return true;
+    }
+    
+    /**
+     * 查找键所在的槽位，不存在时返回应放入的空槽
+     */
+    private int slot(long key) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[keys.length];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,341 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import com.book.keeping.model.TransactionFingerprint;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 以内存映射快照为底层数据的交易列表
+ * 每个位置记录快照行号，交易对象在访问时才从快照创建，并放入固定大小的行缓存；
+ * 新增或替换的记录直接保存对象。这样加载几百万条记录时只需分配两个数组，
+ * 表格滚动时只有可见窗口附近的行以对象形式存在，内存占用不随浏览过的行数增长。
+ */
+public class LazyTransactionList extends AbstractList<Transaction> implements RandomAccess {
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    // 行缓存大小（2的幂），远大于表格一屏的行数
+    private static final int ROW_CACHE_SIZE = 4096;
+    
+    private final MappedSnapshot snapshot;
+    // 快照行号，-1表示该位置的记录不来自快照
+    private int[] rows;
+    // 不来自快照的记录
+    private Transaction[] materialized;
+    private int size;
+    
+    // 直接映射的行缓存：快照行号的低位决定槽位，相邻的行不会互相挤出
+    private final int[] cachedRows = new int[ROW_CACHE_SIZE];
+    private final Transaction[] cachedTransactions = new Transaction[ROW_CACHE_SIZE];
+    
+    /**
+     * 创建空列表
+     */
+    public LazyTransactionList() {
+        this(null, Collections.emptyList());
+    }
+    
+    /**
+     * @param snapshot 快照，可以为null
+     * @param tail 快照之后新增的交易记录，与快照按日期归并
+     */
+    LazyTransactionList(MappedSnapshot snapshot, List<Transaction> tail) {
+        this.snapshot = snapshot;
+        MergedRows merged = new MergedRows(snapshot, tail);
+        size = merged.size();
+        rows = new int[Math.max(size, DEFAULT_CAPACITY)];
+        materialized = new Transaction[rows.length];
+        for (int i = 0; i < size; i++) {
+            rows[i] = merged.snapshotRow(i);
+            materialized[i] = merged.tailTransaction(i);
+        }
+        Arrays.fill(cachedRows, -1);
+    }
+    
+    private LazyTransactionList(MappedSnapshot snapshot, int[] rows, Transaction[] materialized, int size) {
+        this.snapshot = snapshot;
+        this.rows = rows;
+        this.materialized = materialized;
+        this.size = size;
+        Arrays.fill(cachedRows, -1);
+    }
+    
+    /**
+     * 复制列表，副本与原列表共用快照和交易对象
+     * 只复制两个数组，可以在应用线程上取得副本后交给后台线程读取
+     * @return 副本
+     */
+    public LazyTransactionList copy() {
+        return new LazyTransactionList(snapshot, Arrays.copyOf(rows, Math.max(size, DEFAULT_CAPACITY)),
+                Arrays.copyOf(materialized, Math.max(size, DEFAULT_CAPACITY)), size);
+    }
+    
+    @Override
+    public Transaction get(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index] : getSnapshotRow(row);
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public Transaction set(int index, Transaction transaction) {
+        Transaction old = get(index);
+        rows[index] = -1;
+        materialized[index] = transaction;
+        return old;
+    }
+    
+    @Override
+    public void add(int index, Transaction transaction) {
+        checkIndex(index, size + 1);
+        grow(size + 1);
+        System.arraycopy(rows, index, rows, index + 1, size - index);
+        System.arraycopy(materialized, index, materialized, index + 1, size - index);
+        rows[index] = -1;
+        materialized[index] = transaction;
+        size++;
+        modCount++;
+    }
+    
+    @Override
+    public boolean addAll(int index, Collection<? extends Transaction> transactions) {
+        checkIndex(index, size + 1);
+        int count = transactions.size();
+        if (count == 0) {
+            return false;
+        }
+        grow(size + count);
+        System.arraycopy(rows, index, rows, index + count, size - index);
+        System.arraycopy(materialized, index, materialized, index + count, size - index);
+        Arrays.fill(rows, index, index + count, -1);
+        for (Transaction transaction : transactions) {
+            materialized[index++] = transaction;
+        }
+        size += count;
+        modCount++;
+        return true;
+    }
+    
+    /**
+     * 一次插入多条记录，只移动一遍已有数据
+     * @param positions 每条记录插入位置（相对于插入前的列表），非递减
+     * @param transactions 要插入的记录，与positions一一对应
+     */
+    public void insertAll(int[] positions, List<? extends Transaction> transactions) {
+        int count = transactions.size();
+        if (count == 0) {
+            return;
+        }
+        grow(size + count);
+        // 从尾部开始，每条已有记录只移动一次
+        int i = size - 1;
+        for (int k = count - 1; k >= 0; k--) {
+            int position = positions[k];
+            checkIndex(position, size + 1);
+            int moved = i - position + 1;
+            if (moved > 0) {
+                System.arraycopy(rows, position, rows, position + k + 1, moved);
+                System.arraycopy(materialized, position, materialized, position + k + 1, moved);
+                i = position - 1;
+            }
+            rows[position + k] = -1;
+            materialized[position + k] = transactions.get(k);
+        }
+        size += count;
+        modCount++;
+    }
+    
+    @Override
+    public Transaction remove(int index) {
+        Transaction old = get(index);
+        removeRange(index, index + 1);
+        return old;
+    }
+    
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        System.arraycopy(rows, toIndex, rows, fromIndex, size - toIndex);
+        System.arraycopy(materialized, toIndex, materialized, fromIndex, size - toIndex);
+        Arrays.fill(materialized, size - (toIndex - fromIndex), size, null);
+        size -= toIndex - fromIndex;
+        modCount++;
+    }
+    
+    @Override
+    public void clear() {
+        removeRange(0, size);
+    }
+    
+    /**
+     * 转换为列式数据，尚未创建对象的行直接读取快照中的列
+     * @return 列式数据，行顺序与列表一致
+     */
+    public TransactionColumns toColumns() {
+        TransactionColumns columns = new TransactionColumns(size);
+        for (int i = 0; i < size; i++) {
+            int row = rows[i];
+            if (row < 0) {
+                columns.add(materialized[i]);
+            } else {
+                columns.add(snapshot.epochDay(row), snapshot.amountCents(row), snapshot.category(row),
+                        snapshot.source(row), snapshot.aiGenerated(row));
+            }
+        }
+        return columns;
+    }
+    
+    /**
+     * @param index 位置
+     * @return 该位置记录在快照中的行号，不来自快照时返回-1
+     */
+    public int snapshotRowAt(int index) {
+        checkIndex(index, size);
+        return rows[index];
+    }
+    
+    /**
+     * @param other 另一个列表
+     * @return 两个列表的快照行号是否指向同一个快照
+     */
+    public boolean sharesSnapshot(LazyTransactionList other) {
+        return other != null && other.snapshot == snapshot;
+    }
+    
+    /**
+     * @param row 快照行号，由snapshotRowAt得到
+     * @return 该行描述的UTF-8字节数，描述为null时返回-1
+     */
+    public int snapshotDescriptionLength(int row) {
+        return snapshot.descriptionLength(row);
+    }
+    
+    /**
+     * 将快照行的描述以UTF-8字节复制到目标缓冲区，不解码、不创建对象
+     * @param row 快照行号，描述不为null
+     * @param target 目标缓冲区，剩余空间不小于snapshotDescriptionLength
+     */
+    public void copySnapshotDescription(int row, ByteBuffer target) {
+        snapshot.copyDescription(row, target);
+    }
+    
+    /**
+     * 按快照行号读取记录，经过行缓存
+     * @param row 快照行号，由snapshotRowAt得到
+     * @return 交易记录
+     */
+    public Transaction getSnapshotRow(int row) {
+        int slot = row & (ROW_CACHE_SIZE - 1);
+        if (cachedRows[slot] != row) {
+            cachedTransactions[slot] = snapshot.get(row);
+            cachedRows[slot] = row;
+        }
+        return cachedTransactions[slot];
+    }
+    
+    /**
+     * 读取指定位置记录的日期，快照中的行直接读取日期列，不创建对象
+     * @param index 位置
+     * @return 日期的epoch day
+     */
+    public long epochDay(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index].getDate().toEpochDay() : snapshot.epochDay(row);
+    }
+    
+    /**
+     * 读取指定位置记录的金额，快照中的行直接读取金额列，不创建对象
+     * @param index 位置
+     * @return 以分为单位的金额
+     */
+    public long amountCents(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index].getAmountCents() : snapshot.amountCents(row);
+    }
+    
+    /**
+     * 读取指定位置记录的分类，快照中的行直接读取分类列，不创建对象
+     * @param index 位置
+     * @return 分类，可能为null
+     */
+    public String category(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index].getCategory() : snapshot.category(row);
+    }
+    
+    /**
+     * 读取指定位置记录的来源，快照中的行直接读取来源列，不创建对象
+     * @param index 位置
+     * @return 来源，可能为null
+     */
+    public String source(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index].getSource() : snapshot.source(row);
+    }
+    
+    /**
+     * 读取指定位置记录是否为AI生成的分类，快照中的行直接读取标记列，不创建对象
+     * @param index 位置
+     * @return 是否为AI生成的分类
+     */
+    public boolean aiGenerated(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? Boolean.TRUE.equals(materialized[index].getAiGenerated()) : snapshot.aiGenerated(row);
+    }
+    
+    /**
+     * 读取指定位置记录的描述，快照中的行只解码描述，不创建交易对象
+     * @param index 位置
+     * @return 描述，可能为null
+     */
+    public String description(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        return row < 0 ? materialized[index].getDescription() : snapshot.description(row);
+    }
+    
+    /**
+     * 计算指定位置记录的指纹，快照中的行直接读取列数据，不创建对象
+     * @param index 位置
+     * @return 指纹
+     */
+    public long fingerprint(int index) {
+        checkIndex(index, size);
+        int row = rows[index];
+        if (row < 0) {
+            return TransactionFingerprint.of(materialized[index]);
+        }
+        return TransactionFingerprint.of(snapshot.epochDay(row), snapshot.amountCents(row),
+                snapshot.descriptionHash(row), snapshot.source(row));
+    }
+    
+    private void grow(int capacity) {
+        if (capacity > rows.length) {
+            int newCapacity = Math.max(capacity, rows.length + (rows.length >> 1));
+            rows = Arrays.copyOf(rows, newCapacity);
+            materialized = Arrays.copyOf(materialized, newCapacity);
+        }
+    }
+    
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+} 
\ No newline at end of file
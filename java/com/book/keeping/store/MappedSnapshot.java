@@ -0,0 +1,231 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionFingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射的列式快照
+ * 打开时只解析文件头和字典，各列直接在映射内存上按行读取，交易对象在访问时才创建。
+ * 为保证启动速度，打开时只检查各段长度与文件大小一致，完整的校验和在合并快照前由verify检查。
+ * 只使用绝对位置读取，可以被多个线程同时访问。
+ */
+final class MappedSnapshot implements SnapshotRows {
+    private final Path path;
+    private final ByteBuffer data;
+    private final long generation;
+    private final int size;
+    private final String[] categories;
+    private final String[] sources;
+    private final IntBuffer dates;
+    private final LongBuffer amounts;
+    private final IntBuffer categoryIds;
+    private final IntBuffer sourceIds;
+    private final IntBuffer descriptionOffsets;
+    private final ByteBuffer flags;
+    private final ByteBuffer heap;
+    private final int checksumOffset;
+    
+    private MappedSnapshot(Path path, ByteBuffer data) throws IOException {
+        this.path = path;
+        this.data = data;
+        if (data.capacity() < SnapshotFile.HEADER_SIZE + 4) {
+            throw new IOException("Snapshot truncated: " + path);
+        }
+        if (data.getInt(0) != SnapshotFile.MAGIC) {
+            throw new IOException("Not a snapshot file: " + path);
+        }
+        int version = data.getInt(4);
+        if (version != SnapshotFile.VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        generation = data.getLong(8);
+        size = data.getInt(16);
+        int categoryCount = data.getInt(20);
+        int sourceCount = data.getInt(24);
+        int dictionaryLength = data.getInt(28);
+        long heapLength = data.getLong(32);
+        
+        if (size < 0 || categoryCount < 0 || sourceCount < 0 || dictionaryLength < 0 || heapLength < 0) {
+            throw new IOException("Snapshot header corrupt: " + path);
+        }
+        SnapshotFile.Layout layout = new SnapshotFile.Layout(dictionaryLength, size);
+        if (layout.checksumOffset(heapLength) + 4 != data.capacity()) {
+            throw new IOException("Snapshot truncated: " + path);
+        }
+        checksumOffset = (int) layout.checksumOffset(heapLength);
+        
+        ByteBuffer dictionary = section(SnapshotFile.HEADER_SIZE, dictionaryLength);
+        categories = readStrings(dictionary, categoryCount, SymbolTable.CATEGORIES);
+        sources = readStrings(dictionary, sourceCount, SymbolTable.SOURCES);
+        
+        dates = section(layout.datesOffset, 4L * size).asIntBuffer();
+        amounts = section(layout.amountsOffset, 8L * size).asLongBuffer();
+        categoryIds = section(layout.categoriesOffset, 4L * size).asIntBuffer();
+        sourceIds = section(layout.sourcesOffset, 4L * size).asIntBuffer();
+        descriptionOffsets = section(layout.descriptionOffsetsOffset, 4L * (size + 1)).asIntBuffer();
+        flags = section(layout.flagsOffset, size);
+        heap = section(layout.heapOffset, heapLength);
+    }
+    
+    /**
+     * 以只读方式映射快照文件并校验校验和
+     * 校验需要顺序读取一遍文件，之后按行访问时不再校验
+     * @param path 快照文件路径
+     * @return 映射的快照
+     * @throws IOException 文件格式不正确、校验失败或读取出错时抛出
+     */
+    static MappedSnapshot map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > SnapshotFile.MAX_FILE_SIZE) {
+                throw new IOException("Snapshot too large: " + fileSize + " bytes");
+            }
+            // 通道关闭后映射仍然有效
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize).order(ByteOrder.LITTLE_ENDIAN);
+            MappedSnapshot snapshot = new MappedSnapshot(path, data);
+            snapshot.verify();
+            return snapshot;
+        }
+    }
+    
+    private ByteBuffer section(long offset, long length) {
+        return data.slice((int) offset, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private String[] readStrings(ByteBuffer dictionary, int count, SymbolTable symbols) throws IOException {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (dictionary.remaining() < 4) {
+                throw new IOException("Snapshot dictionary corrupt: " + path);
+            }
+            int length = dictionary.getInt();
+            if (length < 0 || length > dictionary.remaining()) {
+                throw new IOException("Snapshot dictionary corrupt: " + path);
+            }
+            // 使用全局字典中的实例，与其他来源的记录共用
+            int start = dictionary.position();
+            values[i] = symbols.canonical(dictionary, start, start + length);
+            dictionary.position(start + length);
+        }
+        return values;
+    }
+    
+    /**
+     * 校验整个文件的校验和，需要读取全部映射内容
+     * @throws IOException 校验失败时抛出
+     */
+    private void verify() throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data.slice(SnapshotFile.HEADER_SIZE, checksumOffset - SnapshotFile.HEADER_SIZE));
+        crc.update(data.slice(0, SnapshotFile.HEADER_SIZE));
+        if ((int) crc.getValue() != data.getInt(checksumOffset)) {
+            throw new IOException("Snapshot checksum mismatch: " + path);
+        }
+    }
+    
+    /**
+     * 创建指定行的交易记录
+     * @param row 行号
+     * @return 交易记录
+     */
+    Transaction get(int row) {
+        String description = description(row);
+        return Transaction.ofCents(LocalDate.ofEpochDay(epochDay(row)), description, amountCents(row),
+                category(row), source(row), aiGenerated(row));
+    }
+    
+    long getGeneration() {
+        return generation;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public int epochDay(int row) {
+        return dates.get(row);
+    }
+    
+    @Override
+    public long amountCents(int row) {
+        return amounts.get(row);
+    }
+    
+    @Override
+    public String category(int row) {
+        int id = categoryIds.get(row);
+        return id < 0 ? null : categories[id];
+    }
+    
+    @Override
+    public String source(int row) {
+        int id = sourceIds.get(row);
+        return id < 0 ? null : sources[id];
+    }
+    
+    @Override
+    public boolean aiGenerated(int row) {
+        return (flags.get(row) & SnapshotFile.FLAG_AI_GENERATED) != 0;
+    }
+    
+    /**
+     * @param row 行号
+     * @return 描述，可能为null
+     */
+    String description(int row) {
+        int length = descriptionLength(row);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        heap.get(descriptionOffsets.get(row), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 直接在映射的数据上计算描述的哈希值，不创建字符串
+     * @param row 行号
+     * @return 与TransactionFingerprint.descriptionHash(String)相同的哈希值
+     */
+    long descriptionHash(int row) {
+        if ((flags.get(row) & SnapshotFile.FLAG_NULL_DESCRIPTION) != 0) {
+            return TransactionFingerprint.nullDescriptionHash();
+        }
+        int start = descriptionOffsets.get(row);
+        return TransactionFingerprint.descriptionHash(heap, start, descriptionOffsets.get(row + 1) - start);
+    }
+    
+    @Override
+    public int descriptionLength(int row) {
+        if ((flags.get(row) & SnapshotFile.FLAG_NULL_DESCRIPTION) != 0) {
+            return -1;
+        }
+        return descriptionOffsets.get(row + 1) - descriptionOffsets.get(row);
+    }
+    
+    /**
+     * 直接从映射的描述堆复制到目标缓冲区
+     */
+    @Override
+    public void copyDescription(int row, ByteBuffer target) {
+        int start = descriptionOffsets.get(row);
+        int length = descriptionOffsets.get(row + 1) - start;
+        target.put(target.position(), heap, start, length);
+        target.position(target.position() + length);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 快照行与日志中新增记录按日期（从新到旧）归并后的视图
+ * 快照本身已按该顺序排列，新增记录稳定排序后与之归并，日期相同时快照中的行在前，
+ * 与对“快照 + 新增记录”做稳定排序的结果一致。
+ */
+final class MergedRows implements SnapshotRows {
+    private final MappedSnapshot snapshot;
+    private final List<Transaction> tail;
+    // 非负数为快照行号，负数-(k+1)表示第k条新增记录
+    private final int[] order;
+    // 新增记录描述的UTF-8字节，按需填充
+    private final byte[][] tailDescriptions;
+    
+    /**
+     * @param snapshot 快照，可以为null
+     * @param transactions 快照之后新增的交易记录
+     */
+    MergedRows(MappedSnapshot snapshot, List<Transaction> transactions) {
+        this.snapshot = snapshot;
+        this.tail = new ArrayList<>(transactions);
+        tail.sort(Comparator.comparing(Transaction::getDate).reversed());
+        tailDescriptions = new byte[tail.size()][];
+        
+        int snapshotSize = snapshot == null ? 0 : snapshot.size();
+        order = new int[snapshotSize + tail.size()];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < order.length; k++) {
+            if (j >= tail.size() || (i < snapshotSize && snapshot.epochDay(i) >= tail.get(j).getDate().toEpochDay())) {
+                order[k] = i++;
+            } else {
+                order[k] = -(j++ + 1);
+            }
+        }
+    }
+    
+    /**
+     * @param row 行号
+     * @return 该行在快照中的行号，不在快照中时返回-1
+     */
+    int snapshotRow(int row) {
+        return order[row] >= 0 ? order[row] : -1;
+    }
+    
+    /**
+     * @param row 行号
+     * @return 该行对应的新增记录，在快照中时返回null
+     */
+    Transaction tailTransaction(int row) {
+        return order[row] >= 0 ? null : tail.get(-order[row] - 1);
+    }
+    
+    @Override
+    public int size() {
+        return order.length;
+    }
+    
+    @Override
+    public int epochDay(int row) {
+        Transaction transaction = tailTransaction(row);
+        return transaction == null ? snapshot.epochDay(order[row]) : (int) transaction.getDate().toEpochDay();
+    }
+    
+    @Override
+    public long amountCents(int row) {
+        Transaction transaction = tailTransaction(row);
+        return transaction == null ? snapshot.amountCents(order[row]) : transaction.getAmountCents();
+    }
+    
+    @Override
+    public String category(int row) {
+        Transaction transaction = tailTransaction(row);
+        return transaction == null ? snapshot.category(order[row]) : transaction.getCategory();
+    }
+    
+    @Override
+    public String source(int row) {
+        Transaction transaction = tailTransaction(row);
+        return transaction == null ? snapshot.source(order[row]) : transaction.getSource();
+    }
+    
+    @Override
+    public boolean aiGenerated(int row) {
+        Transaction transaction = tailTransaction(row);
+        return transaction == null ? snapshot.aiGenerated(order[row]) : Boolean.TRUE.equals(transaction.getAiGenerated());
+    }
+    
+    @Override
+    public int descriptionLength(int row) {
+        if (order[row] >= 0) {
+            return snapshot.descriptionLength(order[row]);
+        }
+        byte[] description = tailDescription(-order[row] - 1);
+        return description == null ? -1 : description.length;
+    }
+    
+    @Override
+    public void copyDescription(int row, ByteBuffer target) {
+        if (order[row] >= 0) {
+            snapshot.copyDescription(order[row], target);
+        } else {
+            target.put(tailDescription(-order[row] - 1));
+        }
+    }
+    
+    /**
+     * 新增记录的描述在第一次使用时编码并缓存，写快照时每条只编码一次
+     */
+    private byte[] tailDescription(int index) {
+        byte[] bytes = tailDescriptions[index];
+        if (bytes == null) {
+            String description = tail.get(index).getDescription();
+            if (description == null) {
+                return null;
+            }
+            bytes = description.getBytes(StandardCharsets.UTF_8);
+            tailDescriptions[index] = bytes;
+        }
+        return bytes;
+    }
+} 
\ No newline at end of file
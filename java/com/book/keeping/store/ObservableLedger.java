@@ -0,0 +1,203 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionFingerprint;
+import javafx.collections.ModifiableObservableListBase;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 按日期降序排列的可观察交易列表
+ * 新记录按二分查找插入到排序位置，不需要重新排序整个列表；
+ * 批量插入时先将新记录排序，再与已有记录归并，只移动一遍已有数据。
+ * 每次插入只发出一个变化事件，其中只包含新增的行，表格和统计监听器不必处理整表的排列变化。
+ * 日期相同的记录保持插入的先后顺序，与对整个列表做稳定排序的结果一致。
+ * 合并导入时可先用withoutDuplicates去掉列表中已有的记录。
+ */
+public class ObservableLedger extends ModifiableObservableListBase<Transaction> {
+    /** 列表的排列顺序：日期降序 */
+    public static final Comparator<Transaction> DATE_DESCENDING =
+            Comparator.comparing(Transaction::getDate).reversed();
+    
+    private final LazyTransactionList ledger;
+    
+    /**
+     * @param ledger 底层交易列表，应已按日期降序排列
+     */
+    public ObservableLedger(LazyTransactionList ledger) {
+        this.ledger = ledger;
+    }
+    
+    /**
+     * 将一条记录插入到排序位置
+     * @param transaction 交易记录
+     * @return 插入位置
+     */
+    public int insertSorted(Transaction transaction) {
+        int index = upperBound(transaction, 0);
+        add(index, transaction);
+        return index;
+    }
+    
+    /**
+     * 将多条记录归并到排序位置
+     * @param transactions 交易记录，顺序任意
+     */
+    public void insertAllSorted(Collection<? extends Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(DATE_DESCENDING);
+        
+        // 新记录已排序，插入位置单调不减，每次只在上一个位置之后查找
+        int count = sorted.size();
+        int[] positions = new int[count];
+        int position = 0;
+        for (int k = 0; k < count; k++) {
+            position = upperBound(sorted.get(k), position);
+            positions[k] = position;
+        }
+        
+        beginChange();
+        ledger.insertAll(positions, sorted);
+        // 插入位置相同的记录在结果中相邻，合并为一段新增
+        int k = 0;
+        while (k < count) {
+            int start = k;
+            while (k + 1 < count && positions[k + 1] == positions[start]) {
+                k++;
+            }
+            k++;
+            nextAdd(positions[start] + start, positions[start] + k);
+        }
+        endChange();
+    }
+    
+    /**
+     * 去掉已在列表中的记录
+     * 按日期、描述、金额和来源的指纹比较。重复按次数计算：列表中有两条相同的记录时，
+     * 新记录中最多去掉两条相同的，其余的仍然保留。
+     * @param transactions 待导入的记录
+     * @return 列表中尚不存在的记录，保持原有顺序
+     */
+    public List<Transaction> withoutDuplicates(Collection<? extends Transaction> transactions) {
+        List<Transaction> distinct = new ArrayList<>(transactions.size());
+        if (ledger.isEmpty()) {
+            distinct.addAll(transactions);
+            return distinct;
+        }
+        FingerprintCounts existing = new FingerprintCounts(ledger.size());
+        for (int i = 0, n = ledger.size(); i < n; i++) {
+            existing.add(ledger.fingerprint(i));
+        }
+        for (Transaction transaction : transactions) {
+            if (!existing.remove(TransactionFingerprint.of(transaction))) {
+                distinct.add(transaction);
+            }
+        }
+        return distinct;
+    }
+    
+    /**
+     * 日期在指定范围内的记录
+     * 列表按日期降序排列，两次二分查找确定范围的首尾位置，耗时O(log n)，不遍历范围外的行。
+     * 返回的是列表的视图，列表变化后不再有效，需要保留时应复制。
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 范围内的记录，按日期降序排列
+     */
+    public List<Transaction> between(LocalDate startDate, LocalDate endDate) {
+        int from = firstBefore(endDate.toEpochDay() + 1, 0);
+        int to = Math.max(from, firstBefore(startDate.toEpochDay(), from));
+        return subList(from, to);
+    }
+    
+    /**
+     * 按位置选出的只读列表，供表格显示搜索结果
+     * 只保存位置，记录在表格显示到时才读取；列表变化后位置不再有效，应重新选出。
+     * @param positions 位置，升序
+     * @return 只读列表，按日期降序排列
+     */
+    public ObservableList<Transaction> select(int[] positions) {
+        return new Selection(positions);
+    }
+    
+    /**
+     * 二分查找第一个排在指定记录之后的位置，只比较日期，不创建快照行的对象
+     */
+    private int upperBound(Transaction transaction, int from) {
+        // 日期降序：日期不早于该记录的都排在它前面
+        return firstBefore(transaction.getDate().toEpochDay(), from);
+    }
+    
+    /**
+     * 二分查找第一个日期早于指定日期的位置
+     */
+    private int firstBefore(long day, int from) {
+        int low = from;
+        int high = ledger.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ledger.epochDay(mid) >= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    @Override
+    public Transaction get(int index) {
+        return ledger.get(index);
+    }
+    
+    @Override
+    public int size() {
+        return ledger.size();
+    }
+    
+    @Override
+    protected void doAdd(int index, Transaction element) {
+        ledger.add(index, element);
+    }
+    
+    @Override
+    protected Transaction doSet(int index, Transaction element) {
+        return ledger.set(index, element);
+    }
+    
+    @Override
+    protected Transaction doRemove(int index) {
+        return ledger.remove(index);
+    }
+    
+    /**
+     * 按位置读取账本的只读列表
+     */
+    private final class Selection extends ObservableListBase<Transaction> implements RandomAccess {
+        private final int[] positions;
+        
+        Selection(int[] positions) {
+            this.positions = positions;
+        }
+        
+        @Override
+        public Transaction get(int index) {
+            return ledger.get(positions[index]);
+        }
+        
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,301 @@
+package com.book.keeping.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 列式交易快照文件（小端字节序）
+ * 文件头：魔数(int) 版本(int) 已合并的日志代数(long) 行数(int) 分类数(int) 来源数(int)
+ * 字典段长度(int) 描述堆长度(long)，共40字节。
+ * 之后依次为：字典段（分类和来源，int长度加UTF-8字节，按8字节对齐），
+ * 日期列(int，epoch day)，金额列(long，单位为分，按8字节对齐)，分类编号列(int)，来源编号列(int)，
+ * 描述偏移列(int，行数+1个)，标记列(byte)，描述堆(UTF-8字节)，最后是CRC32(int)。
+ * 分类和来源编号为-1表示null。校验和先覆盖文件头之后的全部数据，再覆盖文件头。
+ * 行按日期从新到旧排列，与表格的显示顺序一致。写入时先写临时文件再原子替换。
+ * 整个文件映射为一个缓冲区，大小不能超过MAX_FILE_SIZE，超过时写入失败，原有快照保持不变。
+ */
+final class SnapshotFile {
+    static final int MAGIC = 0x424B534E; // "BKSN"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 40;
+    static final byte FLAG_AI_GENERATED = 1;
+    static final byte FLAG_NULL_DESCRIPTION = 2;
+    // 单个映射缓冲区的上限
+    static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    
+    private SnapshotFile() {
+    }
+    
+    /**
+     * 写入快照
+     * @param path 快照文件路径
+     * @param generation 快照已包含的最大日志代数
+     * @param rows 按显示顺序排列的行
+     * @throws IOException 写入文件出错或快照超过MAX_FILE_SIZE时抛出
+     */
+    static void write(Path path, long generation, SnapshotRows rows) throws IOException {
+        int count = rows.size();
+        
+        // 分类和来源的取值很少，编码为字典编号
+        Dictionary categories = new Dictionary();
+        Dictionary sources = new Dictionary();
+        int[] categoryIds = new int[count];
+        int[] sourceIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            categoryIds[i] = categories.id(rows.category(i));
+            sourceIds[i] = sources.id(rows.source(i));
+        }
+        
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            writeTemp(temp, generation, rows, categories, sources, categoryIds, sourceIds);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static void writeTemp(Path temp, long generation, SnapshotRows rows, Dictionary categories,
+            Dictionary sources, int[] categoryIds, int[] sourceIds) throws IOException {
+        int count = rows.size();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SectionWriter out = new SectionWriter(channel, HEADER_SIZE);
+            categories.writeTo(out);
+            sources.writeTo(out);
+            out.padTo(align(out.position()));
+            Layout layout = new Layout((int) (out.position() - HEADER_SIZE), count);
+            
+            // 先算出文件大小，超过上限时在写入各列之前失败
+            long heapLength = 0;
+            for (int i = 0; i < count; i++) {
+                heapLength += Math.max(rows.descriptionLength(i), 0);
+            }
+            long fileSize = layout.checksumOffset(heapLength) + 4;
+            if (fileSize > MAX_FILE_SIZE) {
+                throw new IOException("Snapshot too large: " + fileSize + " bytes");
+            }
+            
+            for (int i = 0; i < count; i++) {
+                out.putInt(rows.epochDay(i));
+            }
+            out.padTo(layout.amountsOffset);
+            for (int i = 0; i < count; i++) {
+                out.putLong(rows.amountCents(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.putInt(categoryIds[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                out.putInt(sourceIds[i]);
+            }
+            
+            int heapOffset = 0;
+            out.putInt(0);
+            for (int i = 0; i < count; i++) {
+                heapOffset += Math.max(rows.descriptionLength(i), 0);
+                out.putInt(heapOffset);
+            }
+            for (int i = 0; i < count; i++) {
+                byte flags = rows.aiGenerated(i) ? FLAG_AI_GENERATED : 0;
+                if (rows.descriptionLength(i) < 0) {
+                    flags |= FLAG_NULL_DESCRIPTION;
+                }
+                out.put(flags);
+            }
+            // 描述直接从来源复制到写缓冲区，不为每一行创建数组
+            for (int i = 0; i < count; i++) {
+                int length = rows.descriptionLength(i);
+                if (length > 0) {
+                    out.putDescription(rows, i, length);
+                }
+            }
+            out.flush();
+            if (out.position() != layout.checksumOffset(heapLength)) {
+                throw new IOException("Snapshot layout mismatch");
+            }
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(count)
+                    .putInt(categories.size()).putInt(sources.size())
+                    .putInt(layout.dictionaryLength).putLong(heapLength).flip();
+            out.crc.update(header.duplicate());
+            writeFully(channel, header, 0);
+            
+            ByteBuffer checksum = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            checksum.putInt((int) out.crc.getValue()).flip();
+            writeFully(channel, checksum, out.position());
+            channel.force(true);
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+    
+    /**
+     * 向上对齐到8字节
+     */
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+    
+    /**
+     * 各列在文件中的位置，由字典段长度和行数决定
+     */
+    static final class Layout {
+        final int dictionaryLength;
+        final long datesOffset;
+        final long amountsOffset;
+        final long categoriesOffset;
+        final long sourcesOffset;
+        final long descriptionOffsetsOffset;
+        final long flagsOffset;
+        final long heapOffset;
+        
+        Layout(int dictionaryLength, int rowCount) {
+            this.dictionaryLength = dictionaryLength;
+            datesOffset = HEADER_SIZE + (long) dictionaryLength;
+            amountsOffset = align(datesOffset + 4L * rowCount);
+            categoriesOffset = amountsOffset + 8L * rowCount;
+            sourcesOffset = categoriesOffset + 4L * rowCount;
+            descriptionOffsetsOffset = sourcesOffset + 4L * rowCount;
+            flagsOffset = descriptionOffsetsOffset + 4L * (rowCount + 1);
+            heapOffset = flagsOffset + rowCount;
+        }
+        
+        long checksumOffset(long heapLength) {
+            return heapOffset + heapLength;
+        }
+    }
+    
+    /**
+     * 字符串字典，按首次出现的顺序编号
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        
+        int id(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+        
+        int size() {
+            return values.size();
+        }
+        
+        void writeTo(SectionWriter out) throws IOException {
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.put(bytes);
+            }
+        }
+    }
+    
+    /**
+     * 带缓冲的顺序写入，同时计算校验和
+     */
+    private static final class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private long position;
+        
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+        
+        long position() {
+            return position + buffer.position();
+        }
+        
+        void putInt(int value) throws IOException {
+            reserve(4);
+            buffer.putInt(value);
+        }
+        
+        void putLong(long value) throws IOException {
+            reserve(8);
+            buffer.putLong(value);
+        }
+        
+        void put(byte value) throws IOException {
+            reserve(1);
+            buffer.put(value);
+        }
+        
+        void put(byte[] value) throws IOException {
+            if (value.length > buffer.capacity()) {
+                flush();
+                write(ByteBuffer.wrap(value));
+                return;
+            }
+            reserve(value.length);
+            buffer.put(value);
+        }
+        
+        void putDescription(SnapshotRows rows, int row, int length) throws IOException {
+            if (length > buffer.capacity()) {
+                flush();
+                ByteBuffer description = ByteBuffer.allocate(length);
+                rows.copyDescription(row, description);
+                write(description.flip());
+                return;
+            }
+            reserve(length);
+            rows.copyDescription(row, buffer);
+        }
+        
+        void padTo(long target) throws IOException {
+            while (position() < target) {
+                put((byte) 0);
+            }
+        }
+        
+        private void reserve(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+        
+        void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+        
+        private void write(ByteBuffer data) throws IOException {
+            crc.update(data.duplicate());
+            int length = data.remaining();
+            writeFully(channel, data, position);
+            position += length;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.book.keeping.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 按列读取的快照数据来源
+ * 写快照时逐列遍历，避免为每一行创建交易对象
+ */
+interface SnapshotRows {
+    
+    /**
+     * @return 行数
+     */
+    int size();
+    
+    /**
+     * @param row 行号
+     * @return 日期的epoch day
+     */
+    int epochDay(int row);
+    
+    /**
+     * @param row 行号
+     * @return 以分为单位的金额
+     */
+    long amountCents(int row);
+    
+    /**
+     * @param row 行号
+     * @return 分类，可能为null
+     */
+    String category(int row);
+    
+    /**
+     * @param row 行号
+     * @return 来源，可能为null
+     */
+    String source(int row);
+    
+    /**
+     * @param row 行号
+     * @return 是否为AI生成的分类
+     */
+    boolean aiGenerated(int row);
+    
+    /**
+     * @param row 行号
+     * @return 描述的UTF-8字节数，描述为null时返回-1
+     */
+    int descriptionLength(int row);
+    
+    /**
+     * 将描述的UTF-8字节写入缓冲区，不创建中间数组
+     * @param row 行号，描述不为null
+     * @param target 目标缓冲区，剩余空间不少于descriptionLength(row)
+     */
+    void copyDescription(int row, ByteBuffer target);
+} 
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * 交易记录的二进制编码
+ * 格式：日期(int，epoch day) 金额(long，分) 标记(byte) 描述 分类 来源，
+ * 字符串以int长度加UTF-8字节表示，长度为-1表示null。
+ * 旧格式的金额为double，读取时按legacyAmount转换为分
+ */
+final class TransactionCodec {
+    private static final byte FLAG_AI_GENERATED = 1;
+    
+    private TransactionCodec() {
+    }
+    
+    /**
+     * 将交易记录写入缓冲区，空间不足时扩容
+     * @param buffer 缓冲区
+     * @param transaction 交易记录
+     * @return 写入后的缓冲区（可能是新的实例）
+     */
+    static ByteBuffer encode(ByteBuffer buffer, Transaction transaction) {
+        byte[] description = bytes(transaction.getDescription());
+        byte[] category = bytes(transaction.getCategory());
+        byte[] source = bytes(transaction.getSource());
+        int size = 4 + 8 + 1 + 12 + length(description) + length(category) + length(source);
+        
+        buffer = ensureCapacity(buffer, size);
+        buffer.putInt((int) transaction.getDate().toEpochDay());
+        buffer.putLong(transaction.getAmountCents());
+        buffer.put(Boolean.TRUE.equals(transaction.getAiGenerated()) ? FLAG_AI_GENERATED : 0);
+        putString(buffer, description);
+        putString(buffer, category);
+        putString(buffer, source);
+        return buffer;
+    }
+    
+    /**
+     * 从缓冲区当前位置读取一条交易记录
+     * @param buffer 缓冲区
+     * @param legacyAmount 金额是否为旧格式的double
+     * @return 交易记录
+     */
+    static Transaction decode(ByteBuffer buffer, boolean legacyAmount) {
+        LocalDate date = LocalDate.ofEpochDay(buffer.getInt());
+        long amountCents = legacyAmount ? Money.fromDouble(buffer.getDouble()) : buffer.getLong();
+        byte flags = buffer.get();
+        String description = getString(buffer);
+        String category = getSymbol(buffer, SymbolTable.CATEGORIES);
+        String source = getSymbol(buffer, SymbolTable.SOURCES);
+        return Transaction.ofCents(date, description, amountCents, category, source, (flags & FLAG_AI_GENERATED) != 0);
+    }
+    
+    /**
+     * 确保缓冲区剩余空间足够，不足时按倍数扩容并保留已写入的内容
+     * @param buffer 缓冲区
+     * @param required 需要的剩余空间
+     * @return 缓冲区
+     */
+    static ByteBuffer ensureCapacity(ByteBuffer buffer, int required) {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < required) {
+            capacity *= 2;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+    
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+    
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 读取字符串并换成全局字典中的实例，已有的值不创建字符串
+     */
+    private static String getSymbol(ByteBuffer buffer, SymbolTable symbols) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        int start = buffer.position();
+        buffer.position(start + length);
+        return symbols.canonical(buffer, start, start + length);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,373 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的交易日志
+ * 文件头为魔数和版本号，之后是连续的记录：
+ * 长度(int) CRC32(int) 类型(byte) 数据，长度和校验和覆盖类型和数据。
+ * 恢复时遇到校验失败或不完整的记录即视为崩溃时写坏的尾部并截断。
+ * 一次写入包含多条记录时（大批量导入、替换）前后加上BEGIN和COMMIT记录，
+ * 重放时先暂存其间的记录，读到COMMIT才应用；没有COMMIT的尾部整体视为未完成的写入并截断。
+ */
+final class TransactionLog implements Closeable {
+    private static final int MAGIC = 0x424B4C47; // "BKLG"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    
+    // 记录类型，RECORD_ADD为金额保存为double的旧格式，只读取不再写入
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_CLEAR = 2;
+    private static final byte RECORD_ADD_CENTS = 3;
+    private static final byte RECORD_BEGIN = 4;
+    private static final byte RECORD_COMMIT = 5;
+    
+    // 每条ADD记录最多包含的交易数
+    private static final int MAX_BATCH = 4096;
+    
+    // 重放时读取缓冲区的大小
+    private static final int REPLAY_BUFFER_SIZE = 1024 * 1024;
+    
+    private final Path path;
+    private final long generation;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    
+    private TransactionLog(Path path, long generation, FileChannel channel) {
+        this.path = path;
+        this.generation = generation;
+        this.channel = channel;
+    }
+    
+    /**
+     * 打开日志用于追加，文件不存在时创建；已有文件会截断损坏的尾部
+     * @param path 日志文件路径
+     * @param generation 日志代数
+     * @return 日志对象
+     * @throws IOException 读写文件出错时抛出
+     */
+    static TransactionLog open(Path path, long generation) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < FILE_HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                channel.force(true);
+            } else {
+                long validLength = replay(channel, null, null);
+                if (validLength < channel.size()) {
+                    channel.truncate(validLength);
+                    channel.force(true);
+                }
+            }
+            channel.position(channel.size());
+            return new TransactionLog(path, generation, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * 重放日志文件中的记录
+     * @param path 日志文件路径
+     * @param target 重放的目标列表
+     * @return 日志中是否有清空记录，有则目标列表之前的内容和更早的快照都已失效
+     * @throws IOException 读取文件出错时抛出
+     */
+    static boolean replay(Path path, List<Transaction> target) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        boolean[] cleared = new boolean[1];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            replay(channel, target, cleared);
+        }
+        return cleared[0];
+    }
+    
+    /**
+     * 重放日志记录，返回有效数据的长度
+     * @param channel 文件通道
+     * @param target 重放的目标列表，为null时只校验
+     * @param cleared 重放到清空记录时将第一个元素置为true
+     * @return 最后一条完整记录之后的位置，未提交的批次不计入
+     */
+    private static long replay(FileChannel channel, List<Transaction> target, boolean[] cleared) throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE) {
+            return 0;
+        }
+        
+        // 按固定大小的缓冲区分段读入堆内存，而不做内存映射，以免映射期间无法截断文件；
+        // 单条记录超过缓冲区时才扩大缓冲区
+        ByteBuffer data = fill(channel, ByteBuffer.allocate(REPLAY_BUFFER_SIZE).limit(0), 0, FILE_HEADER_SIZE);
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a transaction log");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported transaction log version: " + version);
+        }
+        
+        CRC32 crc = new CRC32();
+        long position = FILE_HEADER_SIZE;
+        // 当前未提交批次的起始位置，-1表示不在批次中；批次内的记录先暂存在staged中
+        long batchStart = -1;
+        List<Transaction> staged = new ArrayList<>();
+        boolean stagedClear = false;
+        while (size - position >= RECORD_HEADER_SIZE) {
+            data = fill(channel, data, position, RECORD_HEADER_SIZE);
+            if (data.remaining() < RECORD_HEADER_SIZE) {
+                break;
+            }
+            int length = data.getInt(data.position());
+            int checksum = data.getInt(data.position() + 4);
+            if (length <= 0 || length > size - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            data = fill(channel, data, position, RECORD_HEADER_SIZE + length);
+            if (data.remaining() < RECORD_HEADER_SIZE + length) {
+                break;
+            }
+            
+            ByteBuffer record = data.slice(data.position() + RECORD_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            long recordStart = position;
+            data.position(data.position() + RECORD_HEADER_SIZE + length);
+            position += RECORD_HEADER_SIZE + length;
+            
+            byte type = record.get(0);
+            if (type == RECORD_BEGIN) {
+                batchStart = recordStart;
+                staged.clear();
+                stagedClear = false;
+            } else if (type == RECORD_COMMIT) {
+                if (batchStart < 0) {
+                    throw new IOException("Log commit without begin at offset " + recordStart);
+                }
+                batchStart = -1;
+                if (target != null) {
+                    if (stagedClear) {
+                        target.clear();
+                        cleared[0] = true;
+                    }
+                    target.addAll(staged);
+                    staged.clear();
+                }
+            } else if (target != null) {
+                if (batchStart >= 0) {
+                    stagedClear |= apply(record, staged);
+                } else if (apply(record, target)) {
+                    cleared[0] = true;
+                }
+            }
+        }
+        // 没有提交的批次连同其后的内容一起丢弃
+        return batchStart >= 0 ? batchStart : position;
+    }
+    
+    /**
+     * 保证缓冲区中至少有needed个未读字节，不足时从文件中继续读取
+     * @param data 读模式的缓冲区，当前位置对应文件中的position
+     * @return 读模式的缓冲区，容量不够时为新分配的缓冲区；文件已结束时剩余字节可能仍少于needed
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer data, long position, int needed) throws IOException {
+        if (data.remaining() >= needed) {
+            return data;
+        }
+        if (data.capacity() < needed) {
+            data = ByteBuffer.allocate(needed).put(data);
+        } else {
+            data.compact();
+        }
+        while (data.hasRemaining()) {
+            if (channel.read(data, position + data.position()) < 0) {
+                break;
+            }
+        }
+        return data.flip();
+    }
+    
+    /**
+     * 应用一条记录，返回是否为清空记录
+     */
+    private static boolean apply(ByteBuffer record, List<Transaction> target) throws IOException {
+        byte type = record.get();
+        switch (type) {
+            case RECORD_ADD:
+            case RECORD_ADD_CENTS:
+                int count = record.getInt();
+                for (int i = 0; i < count; i++) {
+                    target.add(TransactionCodec.decode(record, type == RECORD_ADD));
+                }
+                return false;
+            case RECORD_CLEAR:
+                target.clear();
+                return true;
+            default:
+                throw new IOException("Unknown log record type: " + type);
+        }
+    }
+    
+    /**
+     * 追加交易记录并同步到磁盘
+     * @param transactions 交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    void appendAll(List<Transaction> transactions) throws IOException {
+        writeBatch(false, transactions);
+    }
+    
+    /**
+     * 追加清空记录和新的交易记录并同步到磁盘
+     * 两者属于同一个批次，写入中途崩溃时重放不会只应用清空记录
+     * @param transactions 替换后的交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    void replaceAll(List<Transaction> transactions) throws IOException {
+        writeBatch(true, transactions);
+    }
+    
+    /**
+     * 写入一次操作的全部记录并同步到磁盘
+     * 记录多于一条时前后加上BEGIN和COMMIT，重放时整体应用或整体丢弃；写入出错时截断本次写入的内容
+     */
+    private void writeBatch(boolean clear, List<Transaction> transactions) throws IOException {
+        int records = (clear ? 1 : 0) + (transactions.size() + MAX_BATCH - 1) / MAX_BATCH;
+        long start = channel.position();
+        try {
+            if (records > 1) {
+                beginRecord(RECORD_BEGIN);
+                writeRecord();
+            }
+            if (clear) {
+                beginRecord(RECORD_CLEAR);
+                writeRecord();
+            }
+            writeAdds(transactions);
+            if (records > 1) {
+                beginRecord(RECORD_COMMIT);
+                writeRecord();
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            rollback(start);
+            throw e;
+        }
+    }
+    
+    /**
+     * 将交易记录按MAX_BATCH分组写为ADD记录，不同步到磁盘
+     */
+    private void writeAdds(List<Transaction> transactions) throws IOException {
+        for (int from = 0; from < transactions.size(); from += MAX_BATCH) {
+            int to = Math.min(from + MAX_BATCH, transactions.size());
+            beginRecord(RECORD_ADD_CENTS);
+            buffer.putInt(to - from);
+            for (int i = from; i < to; i++) {
+                buffer = TransactionCodec.encode(buffer, transactions.get(i));
+            }
+            writeRecord();
+        }
+    }
+    
+    /**
+     * 追加清空记录并同步到磁盘
+     * @throws IOException 写入文件出错时抛出
+     */
+    void appendClear() throws IOException {
+        long start = channel.position();
+        try {
+            beginRecord(RECORD_CLEAR);
+            writeRecord();
+            channel.force(false);
+        } catch (IOException e) {
+            rollback(start);
+            throw e;
+        }
+    }
+    
+    /**
+     * 写入失败时丢弃本次写入的内容，避免后续记录追加在损坏的数据之后
+     */
+    private void rollback(long position) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException ignored) {
+            // 截断失败时由下次打开日志时的校验处理
+        }
+    }
+    
+    private void beginRecord(byte type) {
+        buffer.clear();
+        buffer.position(RECORD_HEADER_SIZE);
+        buffer.put(type);
+        buffer = TransactionCodec.ensureCapacity(buffer, 4);
+    }
+    
+    private void writeRecord() throws IOException {
+        int length = buffer.position() - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+    
+    /**
+     * 日志中是否没有任何记录
+     * @return 是否为空
+     * @throws IOException 读取文件大小出错时抛出
+     */
+    boolean isEmpty() throws IOException {
+        return channel.size() <= FILE_HEADER_SIZE;
+    }
+    
+    long size() throws IOException {
+        return channel.size();
+    }
+    
+    long getGeneration() {
+        return generation;
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,277 @@
+package com.book.keeping.store;
+
+import com.book.keeping.model.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 交易数据存储
+ * 每次添加或导入都追加到日志（transactions-代数.log），日志超过阈值后在后台合并为快照（snapshot-代数.dat）。
+ * 快照记录它已包含的最大日志代数，合并时先切换到新一代日志再写快照，
+ * 因此任意时刻崩溃后都可以通过“最新快照 + 更新代数的日志”恢复出完整数据。
+ * 快照以内存映射方式加载，映射中的旧文件在部分平台上无法删除，删除失败的文件留到下次启动时清理。
+ */
+public class TransactionStore implements Closeable {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".dat";
+    private static final String LOG_PREFIX = "transactions-";
+    private static final String LOG_SUFFIX = ".log";
+    
+    // 日志超过该大小后自动合并为快照
+    private static final long COMPACT_THRESHOLD = 64L * 1024 * 1024;
+    
+    private final Path directory;
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "store-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private TransactionLog log;
+    private boolean compactionScheduled;
+    
+    private TransactionStore(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * 打开存储目录，目录不存在时创建
+     * @param directory 存储目录
+     * @return 存储对象
+     * @throws IOException 读写文件出错时抛出
+     */
+    public static TransactionStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        TransactionStore store = new TransactionStore(directory);
+        store.recover();
+        return store;
+    }
+    
+    /**
+     * 清理已被快照包含的旧文件，并打开最新一代日志
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        TreeMap<Long, Path> logs = listFiles(LOG_PREFIX, LOG_SUFFIX);
+        long snapshotGeneration = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        
+        // 旧快照和已合并的日志不再需要，合并中途崩溃留下的临时快照（代数可能比最新快照更高）也一并删除
+        deleteObsolete(snapshotGeneration);
+        for (Path temp : listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX + ".tmp").values()) {
+            Files.deleteIfExists(temp);
+        }
+        
+        long generation = Math.max(snapshotGeneration + 1, logs.isEmpty() ? 0 : logs.lastKey());
+        log = TransactionLog.open(logPath(generation), generation);
+    }
+    
+    /**
+     * 加载全部交易记录：映射最新快照，再按代数顺序重放其后的日志
+     * 快照中的行在访问时才创建对象；映射时顺序读取一遍快照校验校验和，不解码任何行
+     * @return 交易记录，按日期从新到旧排列
+     * @throws IOException 读取文件出错或快照校验失败时抛出
+     */
+    public LazyTransactionList load() throws IOException {
+        synchronized (compactionLock) {
+            MappedSnapshot snapshot = mapLatestSnapshot();
+            long currentGeneration;
+            synchronized (this) {
+                currentGeneration = log.getGeneration();
+            }
+            List<Transaction> tail = new ArrayList<>();
+            if (replayLogs(tail, generationOf(snapshot), currentGeneration)) {
+                snapshot = null;
+            }
+            return new LazyTransactionList(snapshot, tail);
+        }
+    }
+    
+    /**
+     * 追加一条交易记录
+     * @param transaction 交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    public void append(Transaction transaction) throws IOException {
+        appendAll(Collections.singletonList(transaction));
+    }
+    
+    /**
+     * 追加多条交易记录
+     * @param transactions 交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    public synchronized void appendAll(List<Transaction> transactions) throws IOException {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        log.appendAll(transactions);
+        compactIfNeeded();
+    }
+    
+    /**
+     * 清空全部交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    public synchronized void clear() throws IOException {
+        log.appendClear();
+    }
+    
+    /**
+     * 用新的交易记录替换全部已有记录
+     * 清空和追加写入同一批日志记录，写入失败时已有记录保持不变
+     * @param transactions 新的交易记录
+     * @throws IOException 写入文件出错时抛出
+     */
+    public synchronized void replaceAll(List<Transaction> transactions) throws IOException {
+        log.replaceAll(transactions);
+        compactIfNeeded();
+    }
+    
+    /**
+     * 将快照和日志合并为新的快照
+     * 合并期间仍可继续追加，新的记录写入下一代日志
+     * @throws IOException 读写文件出错时抛出
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            long sealedGeneration;
+            synchronized (this) {
+                compactionScheduled = false;
+                if (log.isEmpty() && log.getGeneration() == latestSnapshotGeneration() + 1) {
+                    return;
+                }
+                // 封存当前日志，之后的追加写入新一代日志
+                sealedGeneration = log.getGeneration();
+                log.close();
+                log = TransactionLog.open(logPath(sealedGeneration + 1), sealedGeneration + 1);
+            }
+            
+            // 映射时已校验快照，损坏的快照不会被合并进新快照
+            MappedSnapshot snapshot = mapLatestSnapshot();
+            long snapshotGeneration = generationOf(snapshot);
+            List<Transaction> tail = new ArrayList<>();
+            if (replayLogs(tail, snapshotGeneration, sealedGeneration)) {
+                snapshot = null;
+            }
+            SnapshotFile.write(snapshotPath(sealedGeneration), sealedGeneration, new MergedRows(snapshot, tail));
+            
+            // 新快照写入完成后再删除旧文件
+            deleteObsolete(sealedGeneration);
+        }
+    }
+    
+    /**
+     * 删除早于指定快照的快照以及已被其包含的日志
+     * 仍被映射的文件可能无法删除，此时保留到下次启动
+     */
+    private void deleteObsolete(long snapshotGeneration) throws IOException {
+        List<Path> obsolete = new ArrayList<>(listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(snapshotGeneration).values());
+        obsolete.addAll(listFiles(LOG_PREFIX, LOG_SUFFIX).headMap(snapshotGeneration, true).values());
+        for (Path path : obsolete) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // 文件仍在使用中
+            }
+        }
+    }
+    
+    /**
+     * 日志超过阈值时安排后台合并
+     */
+    private void compactIfNeeded() throws IOException {
+        if (compactionScheduled || log.size() < COMPACT_THRESHOLD) {
+            return;
+        }
+        compactionScheduled = true;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    private MappedSnapshot mapLatestSnapshot() throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        return MappedSnapshot.map(snapshots.lastEntry().getValue());
+    }
+    
+    private static long generationOf(MappedSnapshot snapshot) {
+        return snapshot == null ? 0 : snapshot.getGeneration();
+    }
+    
+    private long latestSnapshotGeneration() throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        return snapshots.isEmpty() ? 0 : snapshots.lastKey();
+    }
+    
+    /**
+     * 按代数顺序重放(fromExclusive, toInclusive]范围内的日志
+     * @return 是否重放到了清空记录，是则快照中的数据已失效
+     */
+    private boolean replayLogs(List<Transaction> target, long fromExclusive, long toInclusive) throws IOException {
+        TreeMap<Long, Path> logs = listFiles(LOG_PREFIX, LOG_SUFFIX);
+        boolean cleared = false;
+        for (Path path : logs.subMap(fromExclusive, false, toInclusive, true).values()) {
+            cleared |= TransactionLog.replay(path, target);
+        }
+        return cleared;
+    }
+    
+    /**
+     * 列出目录中指定前缀和后缀的文件，按代数排序
+     */
+    private TreeMap<Long, Path> listFiles(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), path);
+                } catch (NumberFormatException ignored) {
+                    // 忽略不符合命名规则的文件
+                }
+            }
+        }
+        return files;
+    }
+    
+    private Path logPath(long generation) {
+        return directory.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+    
+    private Path snapshotPath(long generation) {
+        return directory.resolve(SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX);
+    }
+    
+    /**
+     * 获取存储目录
+     * @return 存储目录
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        synchronized (this) {
+            log.close();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,91 @@
+package com.book.keeping.util;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * 分析视图的统计计算
+ * 对汇总立方体中日期范围内的格子只遍历一次，同时得到总收支、各类别支出、月度收支和余额趋势。
+ * 格子按日期升序给出，因此每天的余额和月份只在日期变化时计算一次。
+ * 中间结果都是基本类型数组，类别支出按分类编号累加，不为每个格子或每天创建对象。
+ */
+public final class AnalysisEngine {
+    private static final int DEFAULT_CAPACITY = 64;
+    
+    private AnalysisEngine() {
+    }
+    
+    /**
+     * 计算日期范围内的全部统计
+     * @param rollupCube 汇总立方体
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 统计结果
+     */
+    public static AnalysisResult analyze(RollupCube rollupCube, LocalDate startDate, LocalDate endDate) {
+        Accumulator accumulator = new Accumulator();
+        rollupCube.forEachCell(startDate, endDate, accumulator);
+        return accumulator.finish();
+    }
+    
+    /**
+     * 单遍累加器
+     */
+    private static final class Accumulator implements RollupCube.CellVisitor {
+        long income;
+        long expense;
+        long balance;
+        final CategoryTotals categories = new CategoryTotals();
+        
+        int monthCount;
+        int[] months = new int[DEFAULT_CAPACITY];
+        long[] monthIncome = new long[DEFAULT_CAPACITY];
+        long[] monthExpense = new long[DEFAULT_CAPACITY];
+        
+        int dayCount;
+        int[] days = new int[DEFAULT_CAPACITY];
+        long[] balances = new long[DEFAULT_CAPACITY];
+        
+        @Override
+        public void visit(int epochDay, int categoryId, int sourceId, long incomeCents, long expenseCents,
+                          long incomeCount, long expenseCount) {
+            if (dayCount == 0 || days[dayCount - 1] != epochDay) {
+                startDay(epochDay);
+            }
+            income += incomeCents;
+            expense += expenseCents;
+            balance += incomeCents + expenseCents;
+            balances[dayCount - 1] = balance;
+            monthIncome[monthCount - 1] += incomeCents;
+            monthExpense[monthCount - 1] += expenseCents;
+            if (expenseCount > 0) {
+                categories.add(categoryId, expenseCents);
+            }
+        }
+        
+        private void startDay(int epochDay) {
+            if (dayCount == days.length) {
+                days = Arrays.copyOf(days, dayCount * 2);
+                balances = Arrays.copyOf(balances, dayCount * 2);
+            }
+            days[dayCount++] = epochDay;
+            
+            int month = DataAnalysisUtil.monthIndex(epochDay);
+            if (monthCount == 0 || months[monthCount - 1] != month) {
+                if (monthCount == months.length) {
+                    months = Arrays.copyOf(months, monthCount * 2);
+                    monthIncome = Arrays.copyOf(monthIncome, monthCount * 2);
+                    monthExpense = Arrays.copyOf(monthExpense, monthCount * 2);
+                }
+                months[monthCount++] = month;
+            }
+        }
+        
+        AnalysisResult finish() {
+            return new AnalysisResult(income, expense, categories.toMap(),
+                    Arrays.copyOf(months, monthCount), Arrays.copyOf(monthIncome, monthCount),
+                    Arrays.copyOf(monthExpense, monthCount),
+                    Arrays.copyOf(days, dayCount), Arrays.copyOf(balances, dayCount));
+        }
+    }
+} 
\ No newline at end of file
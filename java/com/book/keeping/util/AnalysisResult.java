@@ -0,0 +1,120 @@
+package com.book.keeping.util;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 分析视图所需的全部统计结果，创建后不可修改
+ * 金额以分为单位保存，取值时转换为元。月度收支和余额趋势按时间顺序保存在基本类型数组中，
+ * 按下标读取，不需要为每个点创建对象。
+ */
+public final class AnalysisResult {
+    private final long incomeCents;
+    private final long expenseCents;
+    private final Map<String, Double> categoryExpenses;
+    // 月份序号（年 * 12 + 月 - 1）及当月收入、支出（分）
+    private final int[] months;
+    private final long[] monthIncome;
+    private final long[] monthExpense;
+    // 有交易的日期（epoch day）及截至当天（含）的累计余额（分）
+    private final int[] trendDays;
+    private final long[] trendBalance;
+    
+    AnalysisResult(long incomeCents, long expenseCents, Map<String, Double> categoryExpenses,
+                   int[] months, long[] monthIncome, long[] monthExpense,
+                   int[] trendDays, long[] trendBalance) {
+        this.incomeCents = incomeCents;
+        this.expenseCents = expenseCents;
+        this.categoryExpenses = Collections.unmodifiableMap(categoryExpenses);
+        this.months = months;
+        this.monthIncome = monthIncome;
+        this.monthExpense = monthExpense;
+        this.trendDays = trendDays;
+        this.trendBalance = trendBalance;
+    }
+    
+    /**
+     * @return 总收入
+     */
+    public double getTotalIncome() {
+        return incomeCents / 100.0;
+    }
+    
+    /**
+     * @return 总支出（负数）
+     */
+    public double getTotalExpense() {
+        return expenseCents / 100.0;
+    }
+    
+    /**
+     * @return 净余额
+     */
+    public double getNetBalance() {
+        return (incomeCents + expenseCents) / 100.0;
+    }
+    
+    /**
+     * @return 类别支出映射（负数），只包含有支出记录的类别，不可修改
+     */
+    public Map<String, Double> getCategoryExpenses() {
+        return categoryExpenses;
+    }
+    
+    /**
+     * @return 有交易的月份数
+     */
+    public int getMonthCount() {
+        return months.length;
+    }
+    
+    /**
+     * @param index 下标，按时间顺序
+     * @return 月份
+     */
+    public YearMonth getMonth(int index) {
+        int month = months[index];
+        return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+    
+    /**
+     * @param index 下标，按时间顺序
+     * @return 当月收入
+     */
+    public double getMonthIncome(int index) {
+        return monthIncome[index] / 100.0;
+    }
+    
+    /**
+     * @param index 下标，按时间顺序
+     * @return 当月支出（负数）
+     */
+    public double getMonthExpense(int index) {
+        return monthExpense[index] / 100.0;
+    }
+    
+    /**
+     * @return 余额趋势的点数，即有交易的天数
+     */
+    public int getTrendSize() {
+        return trendDays.length;
+    }
+    
+    /**
+     * @param index 下标，按时间顺序
+     * @return 日期
+     */
+    public LocalDate getTrendDate(int index) {
+        return LocalDate.ofEpochDay(trendDays[index]);
+    }
+    
+    /**
+     * @param index 下标，按时间顺序
+     * @return 截至当天（含）的累计余额，从范围开始时的0起算
+     */
+    public double getTrendBalance(int index) {
+        return trendBalance[index] / 100.0;
+    }
+} 
\ No newline at end of file
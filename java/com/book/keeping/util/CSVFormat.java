@@ -0,0 +1,133 @@
+package com.book.keeping.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CSV文件格式：字段分隔符、引号字符和字符编码
+ * 引号规则遵循RFC 4180：字段以引号开头时，其中的分隔符和换行符都属于字段内容，
+ * 两个连续的引号表示一个引号字符。分隔符和引号必须是ASCII字符，
+ * 按字节切分对UTF-8和GBK都是安全的（GBK双字节字符的第二个字节不小于0x40，使用'|'等字符作分隔符时除外）。
+ * 编码为null时由resolve根据文件开头的字节自动判断。实例不可变。
+ */
+public final class CSVFormat {
+    /** 逗号分隔、双引号、自动判断编码 */
+    public static final CSVFormat DEFAULT = new CSVFormat((byte) ',', (byte) '"', null);
+    
+    /** GBK编码，运行时不支持时为平台默认编码 */
+    public static final Charset GBK = Charset.isSupported("GBK") ? Charset.forName("GBK") : Charset.defaultCharset();
+    
+    // 判断编码时最多检查的字节数
+    private static final int SNIFF_SIZE = 64 * 1024;
+    
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    
+    private final byte delimiter;
+    private final byte quote;
+    private final Charset charset;
+    
+    private CSVFormat(byte delimiter, byte quote, Charset charset) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.charset = charset;
+    }
+    
+    /**
+     * @param delimiter 字段分隔符，例如','、';'或'\t'
+     * @return 使用指定分隔符的格式
+     * @throws IllegalArgumentException 分隔符不是ASCII字符，或与引号、换行符相同时抛出
+     */
+    public CSVFormat withDelimiter(char delimiter) {
+        return new CSVFormat(checkStructural(delimiter, quote), quote, charset);
+    }
+    
+    /**
+     * @param quote 引号字符
+     * @return 使用指定引号的格式
+     * @throws IllegalArgumentException 引号不是ASCII字符，或与分隔符、换行符相同时抛出
+     */
+    public CSVFormat withQuote(char quote) {
+        return new CSVFormat(delimiter, checkStructural(quote, delimiter), charset);
+    }
+    
+    /**
+     * @param charset 字符编码，为null时自动判断
+     * @return 使用指定编码的格式
+     */
+    public CSVFormat withCharset(Charset charset) {
+        return new CSVFormat(delimiter, quote, charset);
+    }
+    
+    private static byte checkStructural(char c, byte other) {
+        if (c == 0 || c > 0x7F || c == '\n' || c == '\r' || c == other) {
+            throw new IllegalArgumentException("Invalid CSV delimiter or quote: " + (int) c);
+        }
+        return (byte) c;
+    }
+    
+    public byte getDelimiter() {
+        return delimiter;
+    }
+    
+    public byte getQuote() {
+        return quote;
+    }
+    
+    /**
+     * @return 字符编码，为null表示自动判断
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+    
+    /**
+     * 根据文件开头的字节确定实际使用的编码
+     * 有UTF-8 BOM时为UTF-8；否则使用指定的编码；未指定时，开头部分是合法的UTF-8则为UTF-8，否则按GBK处理
+     * @param buffer 文件开头的字节
+     * @param from 起始位置（文件开头）
+     * @param to 结束位置
+     * @return 编码确定的格式
+     */
+    public CSVFormat resolve(ByteBuffer buffer, int from, int to) {
+        if (bomLength(buffer, from, to) > 0) {
+            return withCharset(StandardCharsets.UTF_8);
+        }
+        if (charset != null) {
+            return this;
+        }
+        return withCharset(isUtf8(buffer, from, Math.min(to, from + SNIFF_SIZE)) ? StandardCharsets.UTF_8 : GBK);
+    }
+    
+    /**
+     * 检查一段字节是否为合法的UTF-8，末尾被截断的字符不视为错误
+     */
+    private static boolean isUtf8(ByteBuffer buffer, int from, int to) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer sample = buffer.slice(from, to - from);
+        return !decoder.decode(sample, CharBuffer.allocate(to - from), false).isError();
+    }
+    
+    /**
+     * @param buffer 文件开头的字节
+     * @param from 起始位置（文件开头）
+     * @param to 结束位置
+     * @return UTF-8 BOM的长度，没有BOM时为0
+     */
+    public static int bomLength(ByteBuffer buffer, int from, int to) {
+        if (to - from < UTF8_BOM.length) {
+            return 0;
+        }
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (buffer.get(from + i) != UTF8_BOM[i]) {
+                return 0;
+            }
+        }
+        return UTF8_BOM.length;
+    }
+} 
\ No newline at end of file
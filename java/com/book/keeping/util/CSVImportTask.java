@@ -0,0 +1,119 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 后台导入任务
+ * 在后台线程中用指定的TransactionImporter（默认为CSV）流式解析文件，进度以字节为单位报告，
+ * 解析出的交易记录按批次先在后台线程经过导入阶段处理，再在JavaFX应用线程上交给批次消费者。
+ */
+public class CSVImportTask extends Task<CSVImporter.ImportResult> {
+    // 每批交给界面的记录数
+    private static final int BATCH_SIZE = 2000;
+    
+    private final String filePath;
+    private final TransactionImporter importer;
+    private final ImportOptions options;
+    private final Consumer<List<Transaction>> batchConsumer;
+    private final ImportStage stage;
+    
+    /**
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param batchConsumer 批次消费者，在JavaFX应用线程上调用
+     */
+    public CSVImportTask(String filePath, boolean skipHeader, Consumer<List<Transaction>> batchConsumer) {
+        this(filePath, skipHeader, null, batchConsumer);
+    }
+    
+    /**
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param stage 导入阶段，在后台线程中处理每批记录，可以为null
+     * @param batchConsumer 批次消费者，在JavaFX应用线程上调用
+     */
+    public CSVImportTask(String filePath, boolean skipHeader, ImportStage stage,
+                         Consumer<List<Transaction>> batchConsumer) {
+        this(filePath, skipHeader, CSVFormat.DEFAULT, stage, batchConsumer);
+    }
+    
+    /**
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @param stage 导入阶段，在后台线程中处理每批记录，可以为null
+     * @param batchConsumer 批次消费者，在JavaFX应用线程上调用
+     */
+    public CSVImportTask(String filePath, boolean skipHeader, CSVFormat format, ImportStage stage,
+                         Consumer<List<Transaction>> batchConsumer) {
+        this(filePath, new CSVImporter(), new ImportOptions(skipHeader, format), stage, batchConsumer);
+    }
+    
+    /**
+     * @param filePath 文件路径
+     * @param importer 导入格式
+     * @param options 导入选项
+     * @param stage 导入阶段，在后台线程中处理每批记录，可以为null
+     * @param batchConsumer 批次消费者，在JavaFX应用线程上调用
+     */
+    public CSVImportTask(String filePath, TransactionImporter importer, ImportOptions options, ImportStage stage,
+                         Consumer<List<Transaction>> batchConsumer) {
+        this.filePath = filePath;
+        this.importer = importer;
+        this.options = options;
+        this.stage = stage;
+        this.batchConsumer = batchConsumer;
+    }
+    
+    @Override
+    protected CSVImporter.ImportResult call() {
+        long[] rows = new long[1];
+        updateMessage("Reading file...");
+        
+        CSVImporter.ImportResult result = importer.importFrom(Paths.get(filePath), options, BATCH_SIZE,
+                (chunk, bytesRead, totalBytes) -> {
+                    if (isCancelled()) {
+                        return false;
+                    }
+                    if (stage != null) {
+                        stage.process(chunk);
+                    }
+                    rows[0] += chunk.size();
+                    updateProgress(bytesRead, totalBytes);
+                    updateMessage(String.format("%,d rows, %s / %s", rows[0], formatBytes(bytesRead), formatBytes(totalBytes)));
+                    Platform.runLater(() -> {
+                        // 任务取消后丢弃尚未送达的批次
+                        if (!isCancelled()) {
+                            batchConsumer.accept(chunk);
+                        }
+                    });
+                    return true;
+                });
+        
+        updateProgress(1, 1);
+        updateMessage(String.format("%,d rows loaded", result.getSuccessCount()));
+        return result;
+    }
+    
+    /**
+     * 格式化字节数
+     * @param bytes 字节数
+     * @return 格式化后的文本
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        } else if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+} 
\ No newline at end of file
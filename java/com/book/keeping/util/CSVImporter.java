@@ -1,23 +1,78 @@
 package com.book.keeping.util;
 
+import com.book.keeping.model.SymbolTable;
 import com.book.keeping.model.Transaction;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * CSV文件导入工具类
+ * 同时作为TransactionImporter注册，实例方法按导入选项调用相应的静态方法
  */
-public class CSVImporter {
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(Constants.DATE_FORMAT);
+public class CSVImporter implements TransactionImporter {
+    /** 流式导入时每批交给处理器的默认记录数 */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+    
+    // 内存映射窗口大小，超大文件按窗口分段映射
+    private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+    
+    // 单条记录最多可以扩大到的窗口大小，接近单次映射的上限
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+    
+    // 预览时最多读取的字节数
+    private static final int PREVIEW_WINDOW_SIZE = 1024 * 1024;
+    
+    @Override
+    public String getName() {
+        return "CSV";
+    }
+    
+    @Override
+    public List<String> getExtensions() {
+        return List.of("csv");
+    }
+    
+    /**
+     * 第一行含有逗号、分号或制表符时视为CSV，判断较宽松，应在其他格式之后检查
+     */
+    @Override
+    public boolean sniff(byte[] head, int length) {
+        for (int i = 0; i < length && head[i] != '\n' && head[i] != '\r'; i++) {
+            if (head[i] == ',' || head[i] == ';' || head[i] == '\t') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 大文件经ParallelCSVImporter并行解析，小文件顺序导入
+     */
+    @Override
+    public ImportResult importFrom(Path file, ImportOptions options, int chunkSize, ChunkHandler handler) {
+        return ParallelCSVImporter.importFromCSV(file.toString(), options.isSkipHeader(), options.getFormat(),
+                chunkSize, handler, ForkJoinPool.commonPool());
+    }
+    
+    @Override
+    public PreviewResult preview(Path file, ImportOptions options, int maxRows) {
+        return previewFromCSV(file.toString(), options.isSkipHeader(), options.getFormat(), maxRows);
+    }
     
     /**
      * 从CSV文件导入交易记录
@@ -26,86 +81,410 @@ public class CSVImporter {
      * @return 导入结果，包含成功导入的交易记录和错误信息
      */
     public static ImportResult importFromCSV(String filePath, boolean skipHeader) {
+        return importFromCSV(filePath, skipHeader, CSVFormat.DEFAULT);
+    }
+    
+    /**
+     * 按指定格式从CSV文件导入交易记录
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @return 导入结果，包含成功导入的交易记录和错误信息
+     */
+    public static ImportResult importFromCSV(String filePath, boolean skipHeader, CSVFormat format) {
         List<Transaction> transactions = new ArrayList<>();
+        ImportResult result = importFromCSV(filePath, skipHeader, format, DEFAULT_CHUNK_SIZE,
+                (chunk, bytesRead, totalBytes) -> {
+                    transactions.addAll(chunk);
+                    return true;
+                });
+        return new ImportResult(transactions, result.getErrors());
+    }
+    
+    /**
+     * 以流式方式从CSV文件导入交易记录
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param chunkSize 每批最多包含的记录数
+     * @param handler 批次处理器，返回false时停止导入
+     * @return 导入结果，只包含错误信息和成功导入的记录数
+     */
+    public static ImportResult importFromCSV(String filePath, boolean skipHeader, int chunkSize, ChunkHandler handler) {
+        return importFromCSV(filePath, skipHeader, CSVFormat.DEFAULT, chunkSize, handler);
+    }
+    
+    /**
+     * 按指定格式以流式方式从CSV文件导入交易记录
+     * 文件通过内存映射读取，解析出的交易记录按批次交给处理器，不会在内存中保留整个文件的数据。
+     * 编码由文件开头的字节确定（见CSVFormat.resolve），UTF-8 BOM不作为数据读取
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @param chunkSize 每批最多包含的记录数
+     * @param handler 批次处理器，返回false时停止导入
+     * @return 导入结果，只包含错误信息和成功导入的记录数
+     */
+    public static ImportResult importFromCSV(String filePath, boolean skipHeader, CSVFormat format, int chunkSize,
+                                             ChunkHandler handler) {
+        return importFromCSV(filePath, skipHeader, format, chunkSize, handler, 0, 0);
+    }
+    
+    /**
+     * 从文件中的指定位置开始以流式方式导入，供并行导入在切分点落在引号内时顺序解析剩余部分
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式，offset不为0时应为已确定编码的格式
+     * @param chunkSize 每批最多包含的记录数
+     * @param handler 批次处理器，返回false时停止导入
+     * @param offset 开始位置，必须位于记录开头
+     * @param lineNumber offset之前已有的行数，错误信息中的行号从其后开始
+     * @return 导入结果，只包含这一部分的错误信息和成功导入的记录数
+     */
+    static ImportResult importFromCSV(String filePath, boolean skipHeader, CSVFormat format, int chunkSize,
+                                      ChunkHandler handler, long offset, int lineNumber) {
         List<String> errors = new ArrayList<>();
+        ChunkingVisitor visitor = new ChunkingVisitor(skipHeader, chunkSize, handler, errors);
+        visitor.lineNumber = lineNumber;
+        if (offset > 0) {
+            visitor.setFormat(format);
+        }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int lineNumber = 0;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = offset;
+            int window = MAP_WINDOW_SIZE;
+            visitor.totalBytes = size;
             
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                if (line.trim().isEmpty() || (skipHeader && lineNumber == 1)) { // 根据参数决定是否跳过标题行
-                    continue;
+            while (position < size && !visitor.stopped) {
+                // 扩大窗口重新扫描期间不会调用处理器，在这里响应任务取消
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
                 }
-                
-                try {
-                    Transaction transaction = parseTransaction(line);
-                    if (transaction != null) {
-                        transactions.add(transaction);
+                int length = (int) Math.min(window, size - position);
+                boolean eof = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int start = 0;
+                if (position == 0) {
+                    visitor.setFormat(format.resolve(buffer, 0, length));
+                    start = CSVFormat.bomLength(buffer, 0, length);
+                }
+                visitor.bufferOffset = position;
+                int consumed = scanLines(buffer, start, length, eof, visitor.format, visitor);
+                if (consumed == start && !eof) {
+                    if (window >= MAX_WINDOW_SIZE) {
+                        // 通常是引号没有闭合，之后的内容都被当作同一个字段
+                        errors.add("Line " + (visitor.lineNumber + 1)
+                            + ": record exceeds 2 GB, possibly an unterminated quoted field");
+                        break;
                     }
-                } catch (Exception e) {
-                    errors.add("Line " + lineNumber + ": " + e.getMessage());
+                    // 单条记录超过窗口大小，扩大窗口后重新映射
+                    window = (int) Math.min((long) window * 2, MAX_WINDOW_SIZE);
+                    continue;
                 }
+                position += consumed;
+            }
+        } catch (IOException e) {
+            errors.add("Error reading file: " + e.getMessage());
+        }
+        visitor.flush();
+        
+        return new ImportResult(Collections.emptyList(), errors, visitor.successCount);
+    }
+    
+    /**
+     * 预览CSV文件，只解析文件开头的若干行
+     * 读取量与文件大小无关，总行数根据已读取部分的行密度按文件大小估算
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param maxRows 最多解析的记录数
+     * @return 预览结果
+     */
+    public static PreviewResult previewFromCSV(String filePath, boolean skipHeader, int maxRows) {
+        return previewFromCSV(filePath, skipHeader, CSVFormat.DEFAULT, maxRows);
+    }
+    
+    /**
+     * 按指定格式预览CSV文件，只解析文件开头的若干行
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @param maxRows 最多解析的记录数
+     * @return 预览结果
+     */
+    public static PreviewResult previewFromCSV(String filePath, boolean skipHeader, CSVFormat format, int maxRows) {
+        List<Transaction> transactions = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int length = (int) Math.min(size, PREVIEW_WINDOW_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            
+            ChunkingVisitor visitor = new ChunkingVisitor(skipHeader, maxRows, (chunk, bytesRead, totalBytes) -> {
+                transactions.addAll(chunk);
+                return false;
+            }, errors);
+            visitor.setFormat(format.resolve(buffer, 0, length));
+            int start = CSVFormat.bomLength(buffer, 0, length);
+            int consumed = scanLines(buffer, start, length, length == size, visitor.format, visitor);
+            visitor.flush();
+            
+            // 已读取的数据行（成功或出错）
+            long sampledRows = transactions.size() + errors.size();
+            long estimatedRows;
+            if (consumed == size) {
+                estimatedRows = sampledRows;
+            } else if (consumed > 0) {
+                estimatedRows = Math.round((double) sampledRows / consumed * size);
+            } else {
+                estimatedRows = 0;
             }
+            return new PreviewResult(transactions, errors, estimatedRows, consumed == size);
         } catch (IOException e) {
             errors.add("Error reading file: " + e.getMessage());
         }
         
-        return new ImportResult(transactions, errors);
+        return new PreviewResult(transactions, errors, transactions.size(), false);
     }
     
     /**
-     * 解析单行CSV数据为交易记录
-     * @param line CSV行数据
+     * 扫描缓冲区中的记录，支持\n、\r和\r\n三种换行符（与BufferedReader.readLine一致）
+     * 由DelimiterScanner按块找出分隔符、引号和换行符的位置，再按RFC 4180的状态机处理：
+     * 字段开头的引号进入引号内，引号内的分隔符和换行符属于字段内容，两个连续的引号是转义的引号，
+     * 不在字段开头的引号按普通字符处理。记录内引号外分隔符的位置随记录一起交给访问器，
+     * 切分字段时不需要再逐字节查找
+     * @param buffer 字节缓冲区
+     * @param from 起始位置，必须是记录的开头
+     * @param to 结束位置
+     * @param eof 缓冲区末尾是否为文件末尾，为false时不完整的最后一条记录留给下一个窗口
+     * @param format CSV格式，只使用分隔符和引号
+     * @param visitor 记录访问器
+     * @return 第一个未处理字节的位置
+     */
+    static int scanLines(ByteBuffer buffer, int from, int to, boolean eof, CSVFormat format, LineVisitor visitor) {
+        byte delimiter = format.getDelimiter();
+        byte quote = format.getQuote();
+        DelimiterScanner scanner = DelimiterScanner.create(delimiter, quote);
+        int[] positions = new int[DelimiterScanner.BLOCK_SIZE];
+        int[] separators = new int[16];
+        int separatorCount = 0;
+        int lineStart = from;
+        int fieldStart = from;
+        boolean quoted = false;
+        boolean inQuotes = false;
+        int closedAt = from - 2;
+        for (int block = from; block < to; block += DelimiterScanner.BLOCK_SIZE) {
+            int count = scanner.scan(buffer, block, Math.min(block + DelimiterScanner.BLOCK_SIZE, to), positions);
+            for (int k = 0; k < count; k++) {
+                int i = positions[k];
+                // \r\n中的\n已随\r处理
+                if (i < lineStart) {
+                    continue;
+                }
+                byte b = buffer.get(i);
+                if (b == quote) {
+                    quoted = true;
+                    if (inQuotes) {
+                        inQuotes = false;
+                        closedAt = i;
+                    } else {
+                        inQuotes = CSVRecord.opensQuote(buffer, fieldStart, i, closedAt);
+                    }
+                    continue;
+                }
+                if (inQuotes) {
+                    continue;
+                }
+                if (b == delimiter) {
+                    if (separatorCount == separators.length) {
+                        separators = Arrays.copyOf(separators, separatorCount * 2);
+                    }
+                    separators[separatorCount++] = i;
+                    fieldStart = i + 1;
+                    continue;
+                }
+                int next = i + 1;
+                if (b == '\r') {
+                    if (next == to && !eof) {
+                        // 无法确定后面是否紧跟\n，留给下一个窗口处理
+                        return lineStart;
+                    }
+                    if (next < to && buffer.get(next) == '\n') {
+                        next++;
+                    }
+                }
+                if (!visitor.visitLine(buffer, lineStart, i, next, separators, separatorCount, quoted)) {
+                    return next;
+                }
+                separatorCount = 0;
+                lineStart = next;
+                fieldStart = next;
+                quoted = false;
+            }
+        }
+        if (eof && lineStart < to) {
+            // 缺少结束引号时，文件剩余部分作为一条记录
+            visitor.visitLine(buffer, lineStart, to, to, separators, separatorCount, quoted);
+            return to;
+        }
+        return lineStart;
+    }
+    
+    /**
+     * 解析单条CSV记录为交易记录
+     * @param record CSV记录
      * @return 交易记录对象
      * @throws Exception 解析错误时抛出异常
      */
-    private static Transaction parseTransaction(String line) throws Exception {
-        String[] parts = line.split(",");
-        if (parts.length < 5) {
+    static Transaction parseTransaction(CSVRecord record) throws Exception {
+        if (record.fieldCount() < 5) {
             throw new Exception("Invalid format: expected at least 5 columns");
         }
         
         try {
             // 解析日期
-            LocalDate date = LocalDate.parse(parts[0].trim(), DATE_FORMATTER);
+            LocalDate date = record.parseDate(0);
             
             // 解析描述
-            String description = parts[1].trim();
+            String description = record.text(1);
             if (description.isEmpty()) {
                 throw new Exception("Description cannot be empty");
             }
             
             // 解析金额
-            double amount;
+            long amountCents;
             try {
-                amount = Double.parseDouble(parts[2].trim());
+                amountCents = record.parseAmountCents(2);
             } catch (NumberFormatException e) {
-                throw new Exception("Invalid amount format: " + parts[2]);
+                throw new Exception("Invalid amount format: " + record.raw(2));
             }
             
             // 解析分类
-            String category = parts[3].trim();
-            if (category.isEmpty()) {
-                category = "Uncategorized";
+            String category = "Uncategorized";
+            if (!record.isBlank(3)) {
+                category = record.symbol(3, SymbolTable.CATEGORIES);
             }
             
             // 解析来源
-            String source = parts[4].trim();
-            if (source.isEmpty()) {
-                source = "Other";
+            String source = "Other";
+            if (!record.isBlank(4)) {
+                source = record.symbol(4, SymbolTable.SOURCES);
             }
             
             // 解析AI标记（可选）
             boolean aiGenerated = false;
-            if (parts.length > 5) {
-                aiGenerated = Boolean.parseBoolean(parts[5].trim());
+            if (record.fieldCount() > 5) {
+                aiGenerated = record.parseBoolean(5);
             }
             
-            return new Transaction(date, description, amount, category, source, aiGenerated);
+            return Transaction.ofCents(date, description, amountCents, category, source, aiGenerated);
         } catch (DateTimeParseException e) {
-            throw new Exception("Invalid date format: " + parts[0]);
+            throw new Exception("Invalid date format: " + record.raw(0));
+        }
+    }
+    
+    /**
+     * 记录访问器
+     * 一条记录通常是一行，引号内有换行符时跨越多行；错误信息中的行号按记录计数，与电子表格的行号一致
+     */
+    interface LineVisitor {
+        /**
+         * 访问一条记录，同时给出记录内引号外分隔符的位置
+         * @param buffer 字节缓冲区
+         * @param start 记录起始位置
+         * @param end 记录结束位置（不含换行符）
+         * @param next 下一条记录的起始位置
+         * @param separators 分隔符的位置（升序），只在本次调用内有效
+         * @param separatorCount 分隔符个数
+         * @param quoted 记录中是否出现引号
+         * @return 是否继续扫描
+         */
+        boolean visitLine(ByteBuffer buffer, int start, int end, int next, int[] separators, int separatorCount,
+                          boolean quoted);
+    }
+    
+    /**
+     * 批次处理器，接收流式导入时解析出的交易记录
+     */
+    @FunctionalInterface
+    public interface ChunkHandler {
+        /**
+         * 处理一批交易记录
+         * @param chunk 交易记录，处理器可以直接持有该列表
+         * @param bytesRead 已读取的字节数
+         * @param totalBytes 文件总字节数
+         * @return 是否继续导入
+         */
+        boolean onChunk(List<Transaction> chunk, long bytesRead, long totalBytes);
+    }
+    
+    /**
+     * 逐行解析并按批次输出交易记录的访问器
+     */
+    private static class ChunkingVisitor implements LineVisitor {
+        private final boolean skipHeader;
+        private final int chunkSize;
+        private final ChunkHandler handler;
+        private final List<String> errors;
+        private CSVFormat format;
+        private CSVRecord record;
+        private List<Transaction> chunk;
+        private int lineNumber;
+        private int successCount;
+        private long bufferOffset;
+        private long bytesRead;
+        private long totalBytes;
+        private boolean stopped;
+        
+        ChunkingVisitor(boolean skipHeader, int chunkSize, ChunkHandler handler, List<String> errors) {
+            this.skipHeader = skipHeader;
+            this.chunkSize = Math.max(1, chunkSize);
+            this.handler = handler;
+            this.errors = errors;
+            this.chunk = new ArrayList<>(this.chunkSize);
+        }
+        
+        /**
+         * @param format 编码已确定的CSV格式
+         */
+        void setFormat(CSVFormat format) {
+            this.format = format;
+            this.record = new CSVRecord(format);
+        }
+        
+        @Override
+        public boolean visitLine(ByteBuffer buffer, int start, int end, int next, int[] separators, int separatorCount,
+                                 boolean quoted) {
+            lineNumber++;
+            bytesRead = bufferOffset + next;
+            record.reset(buffer, start, end, separators, separatorCount, quoted);
+            if (record.isBlankLine() || (skipHeader && lineNumber == 1)) { // 根据参数决定是否跳过标题行
+                return true;
+            }
+            
+            try {
+                chunk.add(parseTransaction(record));
+            } catch (Exception e) {
+                errors.add("Line " + lineNumber + ": " + e.getMessage());
+            }
+            
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+            return !stopped;
+        }
+        
+        /**
+         * 将当前批次交给处理器
+         */
+        void flush() {
+            if (chunk.isEmpty() || stopped) {
+                return;
+            }
+            List<Transaction> full = chunk;
+            chunk = new ArrayList<>(chunkSize);
+            successCount += full.size();
+            stopped = !handler.onChunk(full, bytesRead, totalBytes);
         }
     }
     
@@ -115,10 +494,21 @@ public class CSVImporter {
     public static class ImportResult {
         private final List<Transaction> transactions;
         private final List<String> errors;
+        private final int streamedCount;
         
         public ImportResult(List<Transaction> transactions, List<String> errors) {
+            this(transactions, errors, 0);
+        }
+        
+        /**
+         * @param transactions 交易记录
+         * @param errors 错误信息
+         * @param streamedCount 已通过ChunkHandler交出、未保存在结果中的记录数
+         */
+        public ImportResult(List<Transaction> transactions, List<String> errors, int streamedCount) {
             this.transactions = transactions;
             this.errors = errors;
+            this.streamedCount = streamedCount;
         }
         
         public List<Transaction> getTransactions() {
@@ -134,11 +524,41 @@ public class CSVImporter {
         }
         
         public int getSuccessCount() {
-            return transactions.size();
+            return transactions.size() + streamedCount;
         }
         
         public int getErrorCount() {
             return errors.size();
         }
     }
+    
+    /**
+     * 预览结果类
+     */
+    public static class PreviewResult extends ImportResult {
+        private final long estimatedTotalRows;
+        private final boolean complete;
+        
+        public PreviewResult(List<Transaction> transactions, List<String> errors, long estimatedTotalRows, boolean complete) {
+            super(transactions, errors);
+            this.estimatedTotalRows = estimatedTotalRows;
+            this.complete = complete;
+        }
+        
+        /**
+         * 获取估算的总记录数，文件已完整读取时为准确值
+         * @return 总记录数
+         */
+        public long getEstimatedTotalRows() {
+            return estimatedTotalRows;
+        }
+        
+        /**
+         * 是否已读取完整个文件
+         * @return 是否完整
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,424 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * CSV行记录
+ * 直接在字节缓冲区上按分隔符切分字段，只记录每个字段的起止偏移，
+ * 需要时才解码为字符串，避免正则切分和trim()产生的中间字符串。
+ * 以引号开头的字段按RFC 4180处理：去掉外层引号，两个连续的引号还原为一个，
+ * 还原后的内容写入记录自带的缓冲区，字段的其余处理与未加引号的字段相同。
+ * 实例可在逐行解析时重复使用，非线程安全。
+ */
+public final class CSVRecord {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(Constants.DATE_FORMAT);
+    
+    private final Charset charset;
+    private final boolean utf8;
+    private final byte delimiter;
+    private final byte quote;
+    private ByteBuffer buffer;
+    private int lineStart;
+    private int lineEnd;
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int fieldCount;
+    // 各字段是否加了引号，只在hasQuotedFields为true时有效
+    private boolean[] fieldQuoted = new boolean[8];
+    private boolean hasQuotedFields;
+    // 去掉引号后的字段内容，加了引号的字段的起止偏移指向这里
+    private ByteBuffer unquoted = ByteBuffer.allocate(256);
+    private int[] lineSeparators = new int[16];
+    private byte[] scratch = new byte[256];
+    // 字段字节的字符视图，解析金额时重复使用
+    private final FieldText fieldText = new FieldText();
+    
+    public CSVRecord() {
+        this(Charset.defaultCharset());
+    }
+    
+    public CSVRecord(Charset charset) {
+        this(CSVFormat.DEFAULT.withCharset(charset));
+    }
+    
+    /**
+     * @param format CSV格式，编码为null时使用平台默认编码
+     */
+    public CSVRecord(CSVFormat format) {
+        this.charset = format.getCharset() != null ? format.getCharset() : Charset.defaultCharset();
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.delimiter = format.getDelimiter();
+        this.quote = format.getQuote();
+    }
+    
+    /**
+     * 将记录指向缓冲区中的一条记录并切分字段，引号内的分隔符不切分
+     * 与String.split(",")一致：末尾的空字段不计入字段数
+     * @param buffer 字节缓冲区
+     * @param start 记录起始位置（包含）
+     * @param end 记录结束位置（不包含，不含换行符）
+     */
+    public void reset(ByteBuffer buffer, int start, int end) {
+        int count = 0;
+        boolean quoted = false;
+        boolean inQuotes = false;
+        int fieldStart = start;
+        int closedAt = start - 2;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == quote) {
+                quoted = true;
+                if (inQuotes) {
+                    inQuotes = false;
+                    closedAt = i;
+                } else {
+                    inQuotes = opensQuote(buffer, fieldStart, i, closedAt);
+                }
+            } else if (b == delimiter && !inQuotes) {
+                if (count == lineSeparators.length) {
+                    lineSeparators = Arrays.copyOf(lineSeparators, count * 2);
+                }
+                lineSeparators[count++] = i;
+                fieldStart = i + 1;
+            }
+        }
+        reset(buffer, start, end, lineSeparators, count, quoted);
+    }
+    
+    /**
+     * 按已知的分隔符位置将记录指向缓冲区中的一条记录，不再逐字节查找
+     * 字段划分与reset(buffer, start, end)相同
+     * @param buffer 字节缓冲区
+     * @param start 记录起始位置（包含）
+     * @param end 记录结束位置（不包含，不含换行符）
+     * @param separators 引号外分隔符的位置（升序）
+     * @param separatorCount 分隔符个数
+     * @param quoted 记录中是否出现引号，为false时不检查字段是否加了引号
+     */
+    public void reset(ByteBuffer buffer, int start, int end, int[] separators, int separatorCount, boolean quoted) {
+        this.buffer = buffer;
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.hasQuotedFields = quoted;
+        
+        int count = 0;
+        int fieldStart = start;
+        for (int k = 0; k < separatorCount; k++) {
+            count = addField(count, fieldStart, separators[k]);
+            fieldStart = separators[k] + 1;
+        }
+        count = addField(count, fieldStart, end);
+        if (quoted) {
+            unquoteFields(count);
+        }
+        trimEmptyFields(count);
+    }
+    
+    /**
+     * 引号是否开始一个加引号的字段：紧跟在刚结束的引号之后（转义的引号），或之前只有空白
+     * @param buffer 字节缓冲区
+     * @param fieldStart 当前字段的起始位置
+     * @param position 引号的位置
+     * @param closedAt 上一个结束引号的位置
+     * @return 是否进入引号内
+     */
+    static boolean opensQuote(ByteBuffer buffer, int fieldStart, int position, int closedAt) {
+        if (closedAt == position - 1) {
+            return true;
+        }
+        for (int i = fieldStart; i < position; i++) {
+            if (!isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 还原以引号开头的字段，去掉外层引号并把两个连续的引号合并为一个
+     * 结束引号之后、下一个分隔符之前的内容按原样保留，缺少结束引号时保留到字段末尾
+     */
+    private void unquoteFields(int count) {
+        unquoted.clear();
+        for (int index = 0; index < count; index++) {
+            int end = fieldEnds[index];
+            int start = fieldStarts[index];
+            while (start < end && isWhitespace(buffer.get(start))) {
+                start++;
+            }
+            fieldQuoted[index] = start < end && buffer.get(start) == quote;
+            if (!fieldQuoted[index]) {
+                continue;
+            }
+            
+            if (unquoted.remaining() < end - start) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(unquoted.capacity() * 2, unquoted.position() + end - start));
+                unquoted.flip();
+                unquoted = larger.put(unquoted);
+            }
+            fieldStarts[index] = unquoted.position();
+            boolean inQuotes = true;
+            for (int i = start + 1; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == quote && inQuotes) {
+                    if (i + 1 < end && buffer.get(i + 1) == quote) {
+                        i++;
+                    } else {
+                        inQuotes = false;
+                        continue;
+                    }
+                }
+                unquoted.put(b);
+            }
+            fieldEnds[index] = unquoted.position();
+        }
+    }
+    
+    /**
+     * 与String.split(",")一致，去掉末尾的空字段
+     */
+    private void trimEmptyFields(int count) {
+        while (count > 0 && fieldStarts[count - 1] == fieldEnds[count - 1]) {
+            count--;
+        }
+        this.fieldCount = count;
+    }
+    
+    private int addField(int count, int start, int end) {
+        if (count == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, count * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, count * 2);
+            fieldQuoted = Arrays.copyOf(fieldQuoted, count * 2);
+        }
+        fieldStarts[count] = start;
+        fieldEnds[count] = end;
+        return count + 1;
+    }
+    
+    /**
+     * 整行是否为空白（等价于line.trim().isEmpty()）
+     * @return 是否为空白行
+     */
+    public boolean isBlankLine() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (!isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 获取字段数
+     * @return 字段数
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+    
+    /**
+     * 字段去除首尾空白后是否为空
+     * @param index 字段下标
+     * @return 是否为空
+     */
+    public boolean isBlank(int index) {
+        return trimmedEnd(index) == fieldStarts[index];
+    }
+    
+    /**
+     * 获取去除首尾空白后的字段文本
+     * @param index 字段下标
+     * @return 字段文本
+     */
+    public String text(int index) {
+        int end = trimmedEnd(index);
+        return decode(bytes(index), trimmedStart(index, end), end);
+    }
+    
+    /**
+     * 获取去除首尾空白后的字段文本在全局字典中的实例
+     * UTF-8编码的文件直接按字节查找，字典中已有的值不创建字符串
+     * @param index 字段下标
+     * @param symbols 字典
+     * @return 字段文本
+     */
+    public String symbol(int index, SymbolTable symbols) {
+        int end = trimmedEnd(index);
+        int start = trimmedStart(index, end);
+        if (utf8) {
+            return symbols.canonical(bytes(index), start, end);
+        }
+        return symbols.canonical(decode(bytes(index), start, end));
+    }
+    
+    /**
+     * 获取原始字段文本（不去除空白，用于错误信息），加了引号的字段为去掉引号后的内容
+     * @param index 字段下标
+     * @return 字段文本
+     */
+    public String raw(int index) {
+        return decode(bytes(index), fieldStarts[index], fieldEnds[index]);
+    }
+    
+    /**
+     * 解析日期字段
+     * 标准的yyyy-MM-dd直接按字节解析，其他情况交给DateTimeFormatter以保持原有的校验规则
+     * @param index 字段下标
+     * @return 日期
+     * @throws java.time.format.DateTimeParseException 日期格式错误时抛出
+     */
+    public LocalDate parseDate(int index) {
+        ByteBuffer bytes = bytes(index);
+        int end = trimmedEnd(index);
+        int start = trimmedStart(index, end);
+        if (end - start == 10 && bytes.get(start + 4) == '-' && bytes.get(start + 7) == '-') {
+            int year = digits(bytes, start, 4);
+            int month = digits(bytes, start + 5, 2);
+            int day = digits(bytes, start + 8, 2);
+            if (year > 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+                // 与SMART解析模式一致，超出当月天数的日期取当月最后一天
+                int monthLength = Month.of(month).length(Year.isLeap(year));
+                return LocalDate.of(year, month, Math.min(day, monthLength));
+            }
+        }
+        return LocalDate.parse(decode(bytes, start, end), DATE_FORMATTER);
+    }
+    
+    /**
+     * 解析金额字段
+     * @param index 字段下标
+     * @return 金额
+     * @throws NumberFormatException 金额格式错误时抛出
+     */
+    public double parseDouble(int index) {
+        return Double.parseDouble(text(index));
+    }
+    
+    /**
+     * 解析金额字段为最小货币单位，直接读取字节，不经过字符串和double
+     * @param index 字段下标
+     * @return 金额（分）
+     * @throws NumberFormatException 金额格式错误时抛出
+     */
+    public long parseAmountCents(int index) {
+        int end = trimmedEnd(index);
+        fieldText.bytes = bytes(index);
+        fieldText.start = trimmedStart(index, end);
+        fieldText.end = end;
+        return Money.parse(fieldText);
+    }
+    
+    /**
+     * 解析布尔字段（等价于Boolean.parseBoolean）
+     * @param index 字段下标
+     * @return 布尔值
+     */
+    public boolean parseBoolean(int index) {
+        ByteBuffer bytes = bytes(index);
+        int end = trimmedEnd(index);
+        int start = trimmedStart(index, end);
+        if (end - start != 4) {
+            return false;
+        }
+        return (bytes.get(start) | 0x20) == 't'
+                && (bytes.get(start + 1) | 0x20) == 'r'
+                && (bytes.get(start + 2) | 0x20) == 'u'
+                && (bytes.get(start + 3) | 0x20) == 'e';
+    }
+    
+    /**
+     * 字段内容所在的缓冲区，加了引号的字段为还原后的内容
+     */
+    private ByteBuffer bytes(int index) {
+        return hasQuotedFields && fieldQuoted[index] ? unquoted : buffer;
+    }
+    
+    /**
+     * 解析定长数字，非数字时返回-1
+     */
+    private static int digits(ByteBuffer bytes, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    private int trimmedStart(int index, int end) {
+        ByteBuffer bytes = bytes(index);
+        int start = fieldStarts[index];
+        while (start < end && isWhitespace(bytes.get(start))) {
+            start++;
+        }
+        return start;
+    }
+    
+    private int trimmedEnd(int index) {
+        ByteBuffer bytes = bytes(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        while (end > start && isWhitespace(bytes.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+    
+    private String decode(ByteBuffer bytes, int start, int end) {
+        int length = end - start;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        bytes.get(start, scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+    
+    /**
+     * 与String.trim()一致，小于等于空格的字符视为空白
+     */
+    private static boolean isWhitespace(byte b) {
+        return (b & 0xFF) <= ' ';
+    }
+    
+    /**
+     * 缓冲区中一段字节的字符视图，每个字节对应一个字符，只用于解析ASCII数字
+     */
+    private final class FieldText implements CharSequence {
+        ByteBuffer bytes;
+        int start;
+        int end;
+        
+        @Override
+        public int length() {
+            return end - start;
+        }
+        
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xFF);
+        }
+        
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return decode(bytes, start + from, start + to);
+        }
+        
+        @Override
+        public String toString() {
+            return decode(bytes, start, end);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,252 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.CategoryRule;
+import com.book.keeping.model.Transaction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 按规则自动分类的导入阶段
+ * 所有规则的关键词编译成一个Aho-Corasick自动机，每条描述只扫描一遍，
+ * 得到关键词命中的规则集合（位图），扫描代价与规则数量无关。
+ * ASCII字符的状态转移预先展开为完整的转移表，其他字符沿失败链查找。
+ * 之后按规则顺序检查金额、来源和正则条件，第一条全部满足的规则决定分类；
+ * 正则只对其他条件都满足的规则执行。
+ * 只处理未分类的记录，匹配后设置分类并标记为自动生成。编译后不可修改，可在多个线程中使用。
+ */
+public class CategorizationEngine implements ImportStage {
+    private static final int ALPHABET = 128;
+    private static final int ROOT = 0;
+    
+    private final CategoryRule[] rules;
+    // 规则是否有关键词条件
+    private final boolean[] needsKeyword;
+    private final boolean hasKeywords;
+    private final int words;
+    
+    // ASCII完整转移表：state * ALPHABET + c
+    private final int[] transitions;
+    // 非ASCII字符的转移（只含字典树的边）和失败链
+    private final Map<Long, Integer> otherTransitions;
+    private final int[] failure;
+    // 每个状态命中的规则位图，已合并失败链上的输出；没有输出时为null
+    private final long[][] outputs;
+    
+    private CategorizationEngine(CategoryRule[] rules, boolean[] needsKeyword, int[] transitions,
+                                 Map<Long, Integer> otherTransitions, int[] failure, long[][] outputs) {
+        this.rules = rules;
+        this.needsKeyword = needsKeyword;
+        this.transitions = transitions;
+        this.otherTransitions = otherTransitions;
+        this.failure = failure;
+        this.outputs = outputs;
+        this.words = (rules.length + 63) >>> 6;
+        boolean keywords = false;
+        for (boolean needs : needsKeyword) {
+            keywords |= needs;
+        }
+        this.hasKeywords = keywords;
+    }
+    
+    /**
+     * 编译规则
+     * @param ruleList 规则，按优先顺序排列
+     * @return 分类引擎
+     */
+    public static CategorizationEngine compile(List<CategoryRule> ruleList) {
+        CategoryRule[] rules = ruleList.toArray(new CategoryRule[0]);
+        boolean[] needsKeyword = new boolean[rules.length];
+        int words = (rules.length + 63) >>> 6;
+        
+        // 建立字典树
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<long[]> outputs = new ArrayList<>();
+        children.add(new HashMap<>());
+        outputs.add(null);
+        for (int r = 0; r < rules.length; r++) {
+            for (String keyword : rules[r].getKeywords()) {
+                needsKeyword[r] = true;
+                int state = ROOT;
+                for (char c : keyword.toLowerCase(Locale.ROOT).toCharArray()) {
+                    Integer next = children.get(state).get(c);
+                    if (next == null) {
+                        next = children.size();
+                        children.add(new HashMap<>());
+                        outputs.add(null);
+                        children.get(state).put(c, next);
+                    }
+                    state = next;
+                }
+                if (outputs.get(state) == null) {
+                    outputs.set(state, new long[words]);
+                }
+                outputs.get(state)[r >>> 6] |= 1L << r;
+            }
+        }
+        
+        // 按层遍历计算失败链，展开ASCII转移表并合并输出
+        int stateCount = children.size();
+        int[] transitions = new int[stateCount * ALPHABET];
+        Map<Long, Integer> otherTransitions = new HashMap<>();
+        int[] failure = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (Map.Entry<Character, Integer> edge : children.get(ROOT).entrySet()) {
+            failure[edge.getValue()] = ROOT;
+            queue.add(edge.getValue());
+            char c = edge.getKey();
+            if (c < ALPHABET) {
+                transitions[c] = edge.getValue();
+            } else {
+                otherTransitions.put(key(ROOT, c), edge.getValue());
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            int fail = failure[state];
+            // 没有边的ASCII字符沿用失败状态的转移
+            System.arraycopy(transitions, fail * ALPHABET, transitions, state * ALPHABET, ALPHABET);
+            long[] failOutput = outputs.get(fail);
+            if (failOutput != null) {
+                long[] output = outputs.get(state);
+                if (output == null) {
+                    outputs.set(state, failOutput);
+                } else {
+                    long[] merged = output.clone();
+                    for (int w = 0; w < words; w++) {
+                        merged[w] |= failOutput[w];
+                    }
+                    outputs.set(state, merged);
+                }
+            }
+            for (Map.Entry<Character, Integer> edge : children.get(state).entrySet()) {
+                char c = edge.getKey();
+                int child = edge.getValue();
+                failure[child] = next(transitions, otherTransitions, failure, fail, c);
+                queue.add(child);
+                if (c < ALPHABET) {
+                    transitions[state * ALPHABET + c] = child;
+                } else {
+                    otherTransitions.put(key(state, c), child);
+                }
+            }
+        }
+        
+        return new CategorizationEngine(rules, needsKeyword, transitions, otherTransitions, failure,
+                outputs.toArray(new long[0][]));
+    }
+    
+    private static long key(int state, char c) {
+        return (long) state << 16 | c;
+    }
+    
+    /**
+     * 自动机读入一个字符后的状态
+     */
+    private static int next(int[] transitions, Map<Long, Integer> otherTransitions, int[] failure, int state, char c) {
+        if (c < ALPHABET) {
+            return transitions[state * ALPHABET + c];
+        }
+        while (true) {
+            Integer next = otherTransitions.get(key(state, c));
+            if (next != null) {
+                return next;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failure[state];
+        }
+    }
+    
+    @Override
+    public void process(List<Transaction> chunk) {
+        long[] hits = new long[words];
+        for (Transaction transaction : chunk) {
+            if (!isUncategorized(transaction.getCategory())) {
+                continue;
+            }
+            String category = categorize(transaction.getDescription(), transaction.getAmountCents(),
+                    transaction.getSource(), hits);
+            if (category != null) {
+                transaction.setCategory(category);
+                transaction.setAiGenerated(true);
+            }
+        }
+    }
+    
+    /**
+     * 按规则确定分类
+     * @param description 描述
+     * @param amountCents 以分为单位的金额
+     * @param source 来源
+     * @return 第一条匹配规则的分类，没有匹配时返回null
+     */
+    public String categorize(String description, long amountCents, String source) {
+        return categorize(description, amountCents, source, new long[words]);
+    }
+    
+    private String categorize(String description, long amountCents, String source, long[] hits) {
+        if (hasKeywords) {
+            Arrays.fill(hits, 0);
+            if (description != null) {
+                scan(description, hits);
+            }
+        }
+        for (int r = 0; r < rules.length; r++) {
+            CategoryRule rule = rules[r];
+            if (needsKeyword[r] && (hits[r >>> 6] & 1L << r) == 0) {
+                continue;
+            }
+            if (!rule.matchesAmount(amountCents)) {
+                continue;
+            }
+            if (rule.getSource() != null && !rule.getSource().equalsIgnoreCase(source)) {
+                continue;
+            }
+            if (rule.getPattern() != null && (description == null || !rule.getPattern().matcher(description).find())) {
+                continue;
+            }
+            return rule.getCategory();
+        }
+        return null;
+    }
+    
+    /**
+     * 扫描描述，将命中关键词的规则记入位图
+     */
+    private void scan(String description, long[] hits) {
+        int state = ROOT;
+        for (int i = 0, n = description.length(); i < n; i++) {
+            char c = Character.toLowerCase(description.charAt(i));
+            state = next(transitions, otherTransitions, failure, state, c);
+            long[] output = outputs[state];
+            if (output != null) {
+                for (int w = 0; w < words; w++) {
+                    hits[w] |= output[w];
+                }
+            }
+        }
+    }
+    
+    /**
+     * @param category 分类
+     * @return 是否为未分类
+     */
+    static boolean isUncategorized(String category) {
+        return category == null || category.isEmpty() || Constants.UNCATEGORIZED.equals(category);
+    }
+    
+    /**
+     * @return 规则数量
+     */
+    public int getRuleCount() {
+        return rules.length;
+    }
+} 
\ No newline at end of file
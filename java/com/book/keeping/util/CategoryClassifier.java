@@ -0,0 +1,555 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionFingerprint;
+import com.book.keeping.store.LazyTransactionList;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按用户历史记录训练的朴素贝叶斯分类器
+ * 特征为描述中的词、来源和金额区间（按符号和数量级划分），经哈希映射到固定数量的桶，
+ * 各类别在每个桶上的计数保存在一个int数组中，训练和预测都不创建对象。
+ * 作为交易列表的监听器随列表变化增量训练，只学习用户确认过分类的记录
+ * （已分类且不是自动生成的）；作为导入阶段为未分类的记录预测分类并标记为自动生成。
+ * 所有方法都在对象锁内执行，可以在导入任务的后台线程中使用。
+ * 同时维护所跟随列表的校验值，保存模型时不需要重新遍历列表；
+ * 模型由load在后台线程中读取或训练，期间列表的变化先记录下来，加载完成后再应用；
+ * 导入任务在加载完成前等待。
+ */
+public class CategoryClassifier implements ListChangeListener<Transaction>, ImportStage {
+    private static final int MAGIC = 0x4E424331;
+    private static final int VERSION = 1;
+    
+    private static final int FEATURE_BITS = 16;
+    private static final int FEATURES = 1 << FEATURE_BITS;
+    private static final int FEATURE_MASK = FEATURES - 1;
+    
+    // 不同种类特征的哈希种子
+    private static final int TOKEN_SEED = 0x9747B28C;
+    private static final int SOURCE_SEED = 0x2B1F5A73;
+    private static final int AMOUNT_SEED = 0x6C8E9CF5;
+    
+    // 计数的加一平滑
+    private static final double ALPHA = 1.0;
+    // 小计数的对数预先算好
+    private static final double[] LOG_COUNT = new double[1024];
+    
+    static {
+        for (int i = 0; i < LOG_COUNT.length; i++) {
+            LOG_COUNT[i] = Math.log(i + ALPHA);
+        }
+    }
+    
+    private final List<String> categories = new ArrayList<>();
+    private final Map<String, Integer> categoryIndex = new HashMap<>();
+    // 桶 * capacity + 类别 -> 计数，同一个桶的各类别相邻，预测时顺序读取
+    private int[] counts = new int[0];
+    private int capacity;
+    // 每个桶在所有类别上的计数之和，用于判断特征是否出现过
+    private final int[] featureTotals = new int[FEATURES];
+    // 各类别的记录数和特征数
+    private long[] documents = new long[0];
+    private long[] tokens = new long[0];
+    private long documentCount;
+    
+    // 当前记录的特征，前tokenFeatures个来自描述
+    private int[] features = new int[64];
+    private int featureCount;
+    private int tokenFeatures;
+    private double[] scores = new double[0];
+    
+    // 所跟随列表的校验值，与checksum(LazyTransactionList)的计算方式相同
+    private long checksum;
+    
+    // 正在进行的加载编号，加载期间列表的变化按顺序记录在pending中，pendingRemovals标记其中的移除
+    private long loadId;
+    private boolean loading;
+    private final List<Transaction> pending = new ArrayList<>();
+    private final BitSet pendingRemovals = new BitSet();
+    
+    /**
+     * 按交易记录列表重新训练，正在进行的加载被取消
+     * @param transactions 交易记录列表
+     */
+    public synchronized void reset(List<? extends Transaction> transactions) {
+        cancelLoad();
+        clear();
+        checksum = 0;
+        for (Transaction transaction : transactions) {
+            apply(transaction, 1);
+        }
+    }
+    
+    private void clear() {
+        categories.clear();
+        categoryIndex.clear();
+        counts = new int[0];
+        capacity = 0;
+        Arrays.fill(featureTotals, 0);
+        documents = new long[0];
+        tokens = new long[0];
+        documentCount = 0;
+        scores = new double[0];
+    }
+    
+    @Override
+    public synchronized void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            for (Transaction transaction : change.getRemoved()) {
+                if (loading) {
+                    pendingRemovals.set(pending.size());
+                    pending.add(transaction);
+                } else {
+                    apply(transaction, -1);
+                }
+            }
+            for (Transaction transaction : change.getAddedSubList()) {
+                if (loading) {
+                    pending.add(transaction);
+                } else {
+                    apply(transaction, 1);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 开始加载模型，在应用线程上与复制交易列表同时调用
+     * 之后列表的变化暂不应用到模型，由load完成时按顺序应用
+     * @return 本次加载的编号，交给load；再次调用后之前的加载结果被丢弃
+     */
+    public synchronized long beginLoad() {
+        loading = true;
+        pending.clear();
+        pendingRemovals.clear();
+        return ++loadId;
+    }
+    
+    private void cancelLoad() {
+        loadId++;
+        loading = false;
+        pending.clear();
+        pendingRemovals.clear();
+        notifyAll();
+    }
+    
+    /**
+     * 放弃指定的加载，之后的分类不再等待；加载已被新的加载取代时不做任何事
+     */
+    private synchronized void cancelLoad(long id) {
+        if (id == loadId && loading) {
+            cancelLoad();
+        }
+    }
+    
+    /**
+     * 读取与交易列表对应的模型，没有对应的模型时按列表重新训练，在后台线程中调用
+     * 校验值、读取和训练都在调用线程中完成，最后才在对象锁内换上新的模型。
+     * 训练时快照中的行直接读取列数据，只为参与训练的行解码描述，不创建交易对象。
+     * 模型文件损坏时按没有保存的模型处理，换上重新训练的模型后再抛出读取时的异常；
+     * 其他异常使加载被放弃，分类不再等待加载完成。
+     * @param id beginLoad返回的编号
+     * @param ledger 调用beginLoad时交易列表的副本
+     * @param path 模型文件路径，为null时不读取
+     * @return 是否读取并换上了保存的模型；重新训练或加载已被取消时返回false
+     * @throws IOException 读取模型文件失败，此时已换上重新训练的模型
+     */
+    public boolean load(long id, LazyTransactionList ledger, Path path) throws IOException {
+        boolean installed = false;
+        try {
+            long ledgerChecksum = checksum(ledger);
+            CategoryClassifier model = new CategoryClassifier();
+            boolean restored = false;
+            IOException restoreError = null;
+            try {
+                restored = path != null && model.restore(path, ledgerChecksum);
+            } catch (IOException e) {
+                restoreError = e;
+                model = new CategoryClassifier();
+            }
+            if (!restored) {
+                model.train(ledger);
+            }
+            installed = install(id, model, ledgerChecksum);
+            if (installed && restoreError != null) {
+                throw restoreError;
+            }
+            return installed && restored;
+        } finally {
+            if (!installed) {
+                cancelLoad(id);
+            }
+        }
+    }
+    
+    /**
+     * 换上加载得到的模型并应用加载期间列表的变化
+     */
+    private synchronized boolean install(long id, CategoryClassifier model, long ledgerChecksum) {
+        if (id != loadId || !loading) {
+            return false;
+        }
+        categories.clear();
+        categories.addAll(model.categories);
+        categoryIndex.clear();
+        categoryIndex.putAll(model.categoryIndex);
+        counts = model.counts;
+        capacity = model.capacity;
+        System.arraycopy(model.featureTotals, 0, featureTotals, 0, FEATURES);
+        documents = model.documents;
+        tokens = model.tokens;
+        documentCount = model.documentCount;
+        scores = new double[capacity];
+        checksum = ledgerChecksum;
+        
+        loading = false;
+        for (int i = 0; i < pending.size(); i++) {
+            apply(pending.get(i), pendingRemovals.get(i) ? -1 : 1);
+        }
+        pending.clear();
+        pendingRemovals.clear();
+        notifyAll();
+        return true;
+    }
+    
+    /**
+     * 按交易列表训练空模型
+     */
+    private void train(LazyTransactionList ledger) {
+        for (int i = 0, n = ledger.size(); i < n; i++) {
+            String category = ledger.category(i);
+            if (!CategorizationEngine.isUncategorized(category) && !ledger.aiGenerated(i)) {
+                train(category, ledger.description(i), ledger.amountCents(i), ledger.source(i), 1);
+            }
+        }
+    }
+    
+    /**
+     * 记录加入（sign为1）或移出（sign为-1）列表，更新校验值和模型
+     */
+    private void apply(Transaction transaction, int sign) {
+        checksum += sign * (TransactionFingerprint.of(transaction) + 1);
+        train(transaction, sign);
+    }
+    
+    /**
+     * 学习（sign为1）或忘记（sign为-1）一条记录
+     */
+    private void train(Transaction transaction, int sign) {
+        String category = transaction.getCategory();
+        if (CategorizationEngine.isUncategorized(category) || Boolean.TRUE.equals(transaction.getAiGenerated())) {
+            return;
+        }
+        train(category, transaction.getDescription(), transaction.getAmountCents(), transaction.getSource(), sign);
+    }
+    
+    private void train(String category, String description, long amountCents, String source, int sign) {
+        Integer id = categoryIndex.get(category);
+        if (id == null) {
+            if (sign < 0) {
+                return;
+            }
+            id = addCategory(category);
+        }
+        extractFeatures(description, amountCents, source);
+        for (int i = 0; i < featureCount; i++) {
+            int feature = features[i];
+            int slot = feature * capacity + id;
+            // 模型与列表不一致时不让计数变为负数
+            if (sign > 0 || counts[slot] > 0) {
+                counts[slot] += sign;
+                featureTotals[feature] += sign;
+                tokens[id] += sign;
+            }
+        }
+        if (sign > 0 || documents[id] > 0) {
+            documents[id] += sign;
+            documentCount += sign;
+        }
+    }
+    
+    private int addCategory(String category) {
+        int id = categories.size();
+        if (id == capacity) {
+            int newCapacity = Math.max(16, capacity * 2);
+            int[] newCounts = new int[FEATURES * newCapacity];
+            if (capacity > 0) {
+                for (int feature = 0; feature < FEATURES; feature++) {
+                    System.arraycopy(counts, feature * capacity, newCounts, feature * newCapacity, capacity);
+                }
+            }
+            counts = newCounts;
+            capacity = newCapacity;
+            documents = Arrays.copyOf(documents, newCapacity);
+            tokens = Arrays.copyOf(tokens, newCapacity);
+            scores = new double[newCapacity];
+        }
+        categories.add(category);
+        categoryIndex.put(category, id);
+        return id;
+    }
+    
+    /**
+     * 为未分类的记录预测分类
+     * 模型正在加载时，后台线程等待加载完成；应用线程上的调用（如预览）不等待，也不预测
+     */
+    @Override
+    public synchronized void process(List<Transaction> chunk) {
+        while (loading && !Platform.isFxApplicationThread()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // 导入任务被取消
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (loading || documentCount == 0) {
+            return;
+        }
+        for (Transaction transaction : chunk) {
+            if (!CategorizationEngine.isUncategorized(transaction.getCategory())) {
+                continue;
+            }
+            String category = predict(transaction.getDescription(), transaction.getAmountCents(), transaction.getSource());
+            if (category != null) {
+                transaction.setCategory(category);
+                transaction.setAiGenerated(true);
+            }
+        }
+    }
+    
+    /**
+     * 预测分类
+     * @param description 描述
+     * @param amount 金额
+     * @param source 来源
+     * @return 后验概率最大的分类；没有训练数据或描述中的词都没有出现过时返回null
+     */
+    public synchronized String predict(String description, double amount, String source) {
+        return predict(description, Money.fromDouble(amount), source);
+    }
+    
+    private String predict(String description, long amountCents, String source) {
+        if (documentCount == 0) {
+            return null;
+        }
+        extractFeatures(description, amountCents, source);
+        boolean known = false;
+        for (int i = 0; i < tokenFeatures && !known; i++) {
+            known = featureTotals[features[i]] > 0;
+        }
+        if (!known) {
+            return null;
+        }
+        
+        int classes = categories.size();
+        for (int c = 0; c < classes; c++) {
+            scores[c] = documents[c] == 0 ? Double.NEGATIVE_INFINITY
+                    : Math.log(documents[c]) - featureCount * Math.log(tokens[c] + ALPHA * FEATURES);
+        }
+        for (int i = 0; i < featureCount; i++) {
+            int base = features[i] * capacity;
+            for (int c = 0; c < classes; c++) {
+                int count = counts[base + c];
+                scores[c] += count < LOG_COUNT.length ? LOG_COUNT[count] : Math.log(count + ALPHA);
+            }
+        }
+        
+        int best = -1;
+        for (int c = 0; c < classes; c++) {
+            if (documents[c] > 0 && (best < 0 || scores[c] > scores[best])) {
+                best = c;
+            }
+        }
+        return best < 0 ? null : categories.get(best);
+    }
+    
+    /**
+     * 提取特征，不创建对象
+     * 描述的切词规则与DescriptionIndex相同：连续的字母数字为一个词（不区分大小写），每个表意文字单独成词
+     */
+    private void extractFeatures(String description, long amountCents, String source) {
+        featureCount = 0;
+        if (description != null) {
+            int hash = 0;
+            boolean inToken = false;
+            int i = 0;
+            while (i < description.length()) {
+                int codePoint = description.codePointAt(i);
+                i += Character.charCount(codePoint);
+                if (Character.isIdeographic(codePoint)) {
+                    if (inToken) {
+                        addFeature(TOKEN_SEED, hash);
+                        inToken = false;
+                    }
+                    addFeature(TOKEN_SEED, codePoint);
+                } else if (Character.isLetterOrDigit(codePoint)) {
+                    if (!inToken) {
+                        hash = 0x811C9DC5;
+                        inToken = true;
+                    }
+                    hash = (hash ^ Character.toLowerCase(codePoint)) * 0x01000193;
+                } else if (inToken) {
+                    addFeature(TOKEN_SEED, hash);
+                    inToken = false;
+                }
+            }
+            if (inToken) {
+                addFeature(TOKEN_SEED, hash);
+            }
+        }
+        tokenFeatures = featureCount;
+        
+        if (source != null) {
+            int hash = 0x811C9DC5;
+            for (int i = 0; i < source.length(); i++) {
+                hash = (hash ^ Character.toLowerCase(source.charAt(i))) * 0x01000193;
+            }
+            addFeature(SOURCE_SEED, hash);
+        }
+        // 金额按符号和以2为底的数量级分桶
+        int magnitude = 64 - Long.numberOfLeadingZeros(Math.abs(amountCents));
+        addFeature(AMOUNT_SEED, (amountCents < 0 ? 128 : 0) | magnitude);
+    }
+    
+    private void addFeature(int seed, int value) {
+        if (featureCount == features.length) {
+            features = Arrays.copyOf(features, featureCount * 2);
+        }
+        // murmur3的最终混合
+        int h = value ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        features[featureCount++] = h & FEATURE_MASK;
+    }
+    
+    /**
+     * 计算交易列表的校验值，用于判断保存的模型是否与列表对应
+     * 快照中的行直接读取列数据，不创建对象
+     * @param ledger 交易列表
+     * @return 校验值，与记录顺序无关
+     */
+    public static long checksum(LazyTransactionList ledger) {
+        long sum = ledger.size();
+        for (int i = 0, n = ledger.size(); i < n; i++) {
+            sum += ledger.fingerprint(i);
+        }
+        return sum;
+    }
+    
+    /**
+     * 保存模型和所跟随列表的校验值，先写入临时文件再替换
+     * 模型正在加载时不保存
+     * @param path 文件路径
+     * @throws IOException 写入文件出错时抛出
+     */
+    public synchronized void save(Path path) throws IOException {
+        if (loading) {
+            return;
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(FEATURE_BITS);
+            out.writeLong(checksum);
+            int classes = categories.size();
+            out.writeInt(classes);
+            for (int c = 0; c < classes; c++) {
+                out.writeUTF(categories.get(c));
+                out.writeLong(documents[c]);
+                out.writeLong(tokens[c]);
+            }
+            // 只写出出现过的桶
+            int used = 0;
+            for (int total : featureTotals) {
+                if (total > 0) {
+                    used++;
+                }
+            }
+            out.writeInt(used);
+            for (int feature = 0; feature < FEATURES; feature++) {
+                if (featureTotals[feature] > 0) {
+                    out.writeInt(feature);
+                    for (int c = 0; c < classes; c++) {
+                        out.writeInt(counts[feature * capacity + c]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * 读取保存的模型
+     * @param path 文件路径
+     * @param checksum 当前交易列表的校验值
+     * @return 文件存在且与交易列表对应时读取并返回true，否则不修改模型并返回false
+     * @throws IOException 读取文件出错或文件格式错误时抛出
+     */
+    public synchronized boolean restore(Path path, long checksum) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != FEATURE_BITS) {
+                throw new IOException("Unsupported model file: " + path);
+            }
+            if (in.readLong() != checksum) {
+                return false;
+            }
+            clear();
+            int classes = in.readInt();
+            for (int c = 0; c < classes; c++) {
+                int id = addCategory(in.readUTF());
+                documents[id] = in.readLong();
+                tokens[id] = in.readLong();
+                documentCount += documents[id];
+            }
+            int used = in.readInt();
+            for (int i = 0; i < used; i++) {
+                int feature = in.readInt();
+                if (feature < 0 || feature >= FEATURES) {
+                    throw new IOException("Corrupt model file: " + path);
+                }
+                for (int c = 0; c < classes; c++) {
+                    int count = in.readInt();
+                    counts[feature * capacity + c] = count;
+                    featureTotals[feature] += count;
+                }
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return 参与训练的记录数
+     */
+    public synchronized long getDocumentCount() {
+        return documentCount;
+    }
+} 
\ No newline at end of file
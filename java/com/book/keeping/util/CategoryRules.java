@@ -0,0 +1,126 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.CategoryRule;
+import com.book.keeping.model.Money;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 读取分类规则文件
+ * 每条规则以方括号中的分类名开头，后面每行一个条件，等号后的内容原样作为值：
+ * <pre>
+ * # 注释
+ * [Dining Out]
+ * keyword = starbucks, costa
+ * source = Credit Card
+ * amount = -200..0
+ *
+ * [Salary]
+ * regex = (?i)payroll|salary
+ * amount = 1000..
+ * </pre>
+ * keyword可以出现多次，amount的任意一端可以省略。规则按文件中的顺序排列，先匹配的优先。
+ */
+public class CategoryRules {
+    
+    /**
+     * 读取规则文件
+     * @param file 规则文件
+     * @return 规则列表，文件不存在时返回空列表
+     * @throws IOException 读取失败或格式错误时抛出
+     */
+    public static List<CategoryRule> load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 解析规则文本
+     * @param lines 文本行
+     * @return 规则列表
+     * @throws IOException 格式错误时抛出，信息中包含行号
+     */
+    public static List<CategoryRule> parse(List<String> lines) throws IOException {
+        List<CategoryRule> rules = new ArrayList<>();
+        String category = null;
+        List<String> keywords = new ArrayList<>();
+        Pattern pattern = null;
+        long minAmount = Long.MIN_VALUE;
+        long maxAmount = Long.MAX_VALUE;
+        String source = null;
+        
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                if (category != null) {
+                    rules.add(new CategoryRule(category, keywords, pattern, minAmount, maxAmount, source));
+                }
+                category = line.substring(1, line.length() - 1).trim();
+                keywords = new ArrayList<>();
+                pattern = null;
+                minAmount = Long.MIN_VALUE;
+                maxAmount = Long.MAX_VALUE;
+                source = null;
+                continue;
+            }
+            
+            int separator = line.indexOf('=');
+            if (category == null || separator < 0) {
+                throw new IOException("Line " + (i + 1) + ": expected [Category] or key = value");
+            }
+            String key = line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(separator + 1).trim();
+            try {
+                switch (key) {
+                    case "keyword":
+                        Arrays.stream(value.split(","))
+                                .map(String::trim)
+                                .filter(keyword -> !keyword.isEmpty())
+                                .forEach(keywords::add);
+                        break;
+                    case "regex":
+                        pattern = Pattern.compile(value);
+                        break;
+                    case "amount":
+                        int range = value.indexOf("..");
+                        if (range < 0) {
+                            minAmount = Money.parse(value);
+                            maxAmount = minAmount;
+                        } else {
+                            String min = value.substring(0, range).trim();
+                            String max = value.substring(range + 2).trim();
+                            minAmount = min.isEmpty() ? Long.MIN_VALUE : Money.parse(min);
+                            maxAmount = max.isEmpty() ? Long.MAX_VALUE : Money.parse(max);
+                        }
+                        break;
+                    case "source":
+                        source = value;
+                        break;
+                    default:
+                        throw new IOException("Line " + (i + 1) + ": unknown condition '" + key + "'");
+                }
+            } catch (NumberFormatException | PatternSyntaxException e) {
+                throw new IOException("Line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        if (category != null) {
+            rules.add(new CategoryRule(category, keywords, pattern, minAmount, maxAmount, source));
+        }
+        return rules;
+    }
+} 
\ No newline at end of file
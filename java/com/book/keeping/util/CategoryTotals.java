@@ -0,0 +1,54 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按分类编号累加金额
+ * 以SymbolTable.CATEGORIES的编号为数组下标，累加时不查找字符串；没有分类的金额单独累计。
+ */
+final class CategoryTotals {
+    private long[] cents = new long[Math.max(16, SymbolTable.CATEGORIES.size())];
+    private boolean[] present = new boolean[cents.length];
+    private long nullCents;
+    private boolean nullPresent;
+    
+    /**
+     * @param categoryId 分类编号，可以为NO_ID
+     * @param amount 金额（分）
+     */
+    void add(int categoryId, long amount) {
+        if (categoryId == SymbolTable.NO_ID) {
+            nullCents += amount;
+            nullPresent = true;
+            return;
+        }
+        if (categoryId >= cents.length) {
+            int capacity = Math.max(categoryId + 1, cents.length * 2);
+            cents = Arrays.copyOf(cents, capacity);
+            present = Arrays.copyOf(present, capacity);
+        }
+        cents[categoryId] += amount;
+        present[categoryId] = true;
+    }
+    
+    /**
+     * @return 分类 -> 金额，只包含累加过的分类，没有分类的金额以null为键
+     */
+    Map<String, Double> toMap() {
+        Map<String, Double> result = new HashMap<>();
+        for (int id = 0; id < cents.length; id++) {
+            if (present[id]) {
+                result.put(SymbolTable.CATEGORIES.name(id), Money.toDouble(cents[id]));
+            }
+        }
+        if (nullPresent) {
+            result.put(null, Money.toDouble(nullCents));
+        }
+        return result;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.book.keeping.util;
+
+import java.util.Arrays;
+
+/**
+ * 图表数据点的降采样
+ * 点数超过图表的像素宽度时，多余的点既看不出来，又会为每个点创建场景图节点，拖慢图表的布局和绘制。
+ * 这里的方法只挑选要保留的点，返回其下标（升序），调用方按下标取出原始数据。
+ */
+public final class ChartDownsampler {
+    // 图表尚未布局、宽度未知时使用的点数上限
+    public static final int DEFAULT_MAX_POINTS = 800;
+    
+    private ChartDownsampler() {
+    }
+    
+    /**
+     * 按图表宽度确定点数上限
+     * @param chartWidth 图表宽度（像素），未布局时为0
+     * @param maxPoints 配置的上限，0表示不限制、只按宽度
+     * @return 点数上限，至少为3
+     */
+    public static int pointBudget(double chartWidth, int maxPoints) {
+        int budget = chartWidth > 0 ? (int) chartWidth : DEFAULT_MAX_POINTS;
+        if (maxPoints > 0) {
+            budget = Math.min(budget, maxPoints);
+        }
+        return Math.max(budget, 3);
+    }
+    
+    /**
+     * Largest-Triangle-Three-Buckets降采样，适用于折线
+     * 首尾两点总是保留，中间的点平均分成threshold - 2个桶，每个桶保留与前一个保留点、
+     * 下一个桶的平均点所构成三角形面积最大的点，因此峰谷等形状特征得以保留。
+     * @param x 横坐标，升序
+     * @param y 纵坐标
+     * @param count 点数
+     * @param threshold 保留的点数
+     * @return 保留点的下标，升序；点数不超过threshold时返回全部下标
+     */
+    public static int[] largestTriangleThreeBuckets(double[] x, double[] y, int count, int threshold) {
+        if (threshold >= count || threshold < 3) {
+            return allIndices(count);
+        }
+        
+        int[] sampled = new int[threshold];
+        int sampledCount = 0;
+        sampled[sampledCount++] = 0;
+        
+        double bucketSize = (double) (count - 2) / (threshold - 2);
+        int previous = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // 下一个桶的平均点
+            int averageStart = (int) ((bucket + 1) * bucketSize) + 1;
+            int averageEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, count);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = averageStart; i < averageEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            int averageCount = averageEnd - averageStart;
+            if (averageCount > 0) {
+                averageX /= averageCount;
+                averageY /= averageCount;
+            } else {
+                averageX = x[count - 1];
+                averageY = y[count - 1];
+            }
+            
+            // 当前桶中三角形面积最大的点
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+            double previousX = x[previous];
+            double previousY = y[previous];
+            double maxArea = -1;
+            int selected = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+                        - (previousX - x[i]) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+            sampled[sampledCount++] = selected;
+            previous = selected;
+        }
+        
+        sampled[sampledCount] = count - 1;
+        return sampled;
+    }
+    
+    /**
+     * 最小/最大值分桶降采样，适用于柱状图
+     * 数据平均分成threshold / 2个桶，每个桶保留最小值和最大值所在的点，极值不会被平滑掉。
+     * @param y 数值
+     * @param count 点数
+     * @param threshold 保留的点数
+     * @return 保留点的下标，升序；点数不超过threshold时返回全部下标
+     */
+    public static int[] minMaxBuckets(double[] y, int count, int threshold) {
+        if (threshold >= count || threshold < 2) {
+            return allIndices(count);
+        }
+        
+        int buckets = threshold / 2;
+        int[] sampled = new int[buckets * 2];
+        int sampledCount = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = (int) ((long) bucket * count / buckets);
+            int end = (int) ((long) (bucket + 1) * count / buckets);
+            int min = start;
+            int max = start;
+            for (int i = start + 1; i < end; i++) {
+                if (y[i] < y[min]) {
+                    min = i;
+                }
+                if (y[i] > y[max]) {
+                    max = i;
+                }
+            }
+            sampled[sampledCount++] = Math.min(min, max);
+            if (min != max) {
+                sampled[sampledCount++] = Math.max(min, max);
+            }
+        }
+        return Arrays.copyOf(sampled, sampledCount);
+    }
+    
+    private static int[] allIndices(int count) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+} 
\ No newline at end of file
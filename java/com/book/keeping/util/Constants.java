@@ -18,6 +18,9 @@ public class Constants {
     public static final String COL_SOURCE = "Source";
     public static final String COL_AI = "AI?";
     
+    // 未分类记录的分类名称
+    public static final String UNCATEGORIZED = "Uncategorized";
+    
     // 预定义的分类列表
     public static final List<String> CATEGORIES = Arrays.asList(
             "Salary",
@@ -35,7 +38,7 @@ public class Constants {
             "Insurance",
             "Other Income",
             "Other Expense",
-            "Uncategorized"
+            UNCATEGORIZED
     );
     
     // 预定义的资金来源列表
@@ -53,6 +56,18 @@ public class Constants {
     // 日期格式
     public static final String DATE_FORMAT = "yyyy-MM-dd";
     
+    // 数据存储目录（位于用户主目录下）
+    public static final String DATA_DIRECTORY = ".bookkeeping";
+    
+    // 分类规则文件（位于数据存储目录下）
+    public static final String CATEGORY_RULES_FILE = "category-rules.txt";
+    
+    // 分类模型文件（位于数据存储目录下）
+    public static final String CATEGORY_MODEL_FILE = "category-model.bin";
+    
+    // 数据分析图表每个序列的最大点数，超过时降采样；0表示只按图表宽度限制
+    public static final int MAX_CHART_POINTS = 500;
+    
     // 按钮文本
     public static final String BTN_ADD_TRANSACTION = "Add Transaction";
     public static final String BTN_CLEAR_FORM = "Clear Form";
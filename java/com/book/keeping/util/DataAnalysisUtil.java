@@ -1,14 +1,21 @@
 package com.book.keeping.util;
 
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
 import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import com.book.keeping.store.ObservableLedger;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * 数据分析工具类
+ * 每个统计方法都有基于TransactionColumns的重载，直接遍历基本类型数组并以分为单位累加，
+ * 除返回结果外不创建对象。基于交易记录列表的方法同样按分精确累加。
  */
 public class DataAnalysisUtil {
     private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
@@ -16,6 +23,7 @@ public class DataAnalysisUtil {
     
     /**
      * 按日期过滤交易记录
+     * 账本列表已按日期排序，直接二分查找范围，耗时O(log n + k)；其他列表逐条比较。
      * @param transactions 交易记录列表
      * @param startDate 开始日期
      * @param endDate 结束日期
@@ -24,6 +32,9 @@ public class DataAnalysisUtil {
     public static List<Transaction> filterTransactionsByDate(List<Transaction> transactions,
                                                           LocalDate startDate,
                                                           LocalDate endDate) {
+        if (transactions instanceof ObservableLedger) {
+            return new ArrayList<>(((ObservableLedger) transactions).between(startDate, endDate));
+        }
         return transactions.stream()
                 .filter(t -> !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate))
                 .collect(Collectors.toList());
@@ -35,10 +46,14 @@ public class DataAnalysisUtil {
      * @return 总收入
      */
     public static double calculateTotalIncome(List<Transaction> transactions) {
-        return transactions.stream()
-                .filter(t -> t.getAmount() > 0)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        long cents = 0;
+        for (Transaction transaction : transactions) {
+            long amount = transaction.getAmountCents();
+            if (amount > 0) {
+                cents += amount;
+            }
+        }
+        return Money.toDouble(cents);
     }
     
     /**
@@ -47,10 +62,14 @@ public class DataAnalysisUtil {
      * @return 总支出
      */
     public static double calculateTotalExpense(List<Transaction> transactions) {
-        return transactions.stream()
-                .filter(t -> t.getAmount() < 0)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        long cents = 0;
+        for (Transaction transaction : transactions) {
+            long amount = transaction.getAmountCents();
+            if (amount < 0) {
+                cents += amount;
+            }
+        }
+        return Money.toDouble(cents);
     }
     
     /**
@@ -59,12 +78,14 @@ public class DataAnalysisUtil {
      * @return 类别支出映射
      */
     public static Map<String, Double> calculateCategoryExpenses(List<Transaction> transactions) {
-        return transactions.stream()
-                .filter(t -> t.getAmount() < 0)
-                .collect(Collectors.groupingBy(
-                    Transaction::getCategory,
-                    Collectors.summingDouble(Transaction::getAmount)
-                ));
+        CategoryTotals totals = new CategoryTotals();
+        for (Transaction transaction : transactions) {
+            long amount = transaction.getAmountCents();
+            if (amount < 0) {
+                totals.add(SymbolTable.CATEGORIES.id(transaction.getCategory()), amount);
+            }
+        }
+        return totals.toMap();
     }
     
     /**
@@ -73,45 +94,264 @@ public class DataAnalysisUtil {
      * @return 月度统计映射
      */
     public static Map<String, Map<String, Double>> calculateMonthlyStats(List<Transaction> transactions) {
+        return calculateMonthlyStats(TransactionColumns.from(transactions));
+    }
+    
+    /**
+     * 计算余额趋势
+     * @param transactions 交易记录列表
+     * @return 余额趋势映射
+     */
+    public static Map<String, Double> calculateBalanceTrend(List<Transaction> transactions) {
+        return calculateBalanceTrend(TransactionColumns.from(transactions));
+    }
+
+    /**
+     * 按日期过滤列式交易数据
+     * @param columns 列式交易数据
+     * @param startDate 开始日期
+     * @param endDate 结束日期
+     * @return 过滤后的列式交易数据
+     */
+    public static TransactionColumns filterTransactionsByDate(TransactionColumns columns,
+                                                           LocalDate startDate,
+                                                           LocalDate endDate) {
+        return columns.filterByDate(startDate, endDate);
+    }
+    
+    /**
+     * 计算总收入
+     * @param columns 列式交易数据
+     * @return 总收入
+     */
+    public static double calculateTotalIncome(TransactionColumns columns) {
+        long cents = 0;
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            long amount = columns.getAmountCents(i);
+            if (amount > 0) {
+                cents += amount;
+            }
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算指定日期范围内的总收入
+     * @param columns 列式交易数据
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 总收入
+     */
+    public static double calculateTotalIncome(TransactionColumns columns, LocalDate startDate, LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        long cents = 0;
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            int day = columns.getEpochDay(i);
+            long amount = columns.getAmountCents(i);
+            if (amount > 0 && day >= from && day <= to) {
+                cents += amount;
+            }
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算总支出
+     * @param columns 列式交易数据
+     * @return 总支出（负数）
+     */
+    public static double calculateTotalExpense(TransactionColumns columns) {
+        long cents = 0;
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            long amount = columns.getAmountCents(i);
+            if (amount < 0) {
+                cents += amount;
+            }
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算指定日期范围内的总支出
+     * @param columns 列式交易数据
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 总支出（负数）
+     */
+    public static double calculateTotalExpense(TransactionColumns columns, LocalDate startDate, LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        long cents = 0;
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            int day = columns.getEpochDay(i);
+            long amount = columns.getAmountCents(i);
+            if (amount < 0 && day >= from && day <= to) {
+                cents += amount;
+            }
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算各类别支出
+     * @param columns 列式交易数据
+     * @return 类别支出映射
+     */
+    public static Map<String, Double> calculateCategoryExpenses(TransactionColumns columns) {
+        return calculateCategoryExpenses(columns, LocalDate.MIN, LocalDate.MAX);
+    }
+    
+    /**
+     * 计算指定日期范围内各类别支出
+     * @param columns 列式交易数据
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 类别支出映射，没有分类的支出以null为键
+     */
+    public static Map<String, Double> calculateCategoryExpenses(TransactionColumns columns,
+                                                                LocalDate startDate,
+                                                                LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        CategoryTotals totals = new CategoryTotals();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            int day = columns.getEpochDay(i);
+            long amount = columns.getAmountCents(i);
+            if (amount < 0 && day >= from && day <= to) {
+                totals.add(columns.getCategoryId(i), amount);
+            }
+        }
+        return totals.toMap();
+    }
+    
+    /**
+     * 计算月度收支统计
+     * @param columns 列式交易数据
+     * @return 月度统计映射
+     */
+    public static Map<String, Map<String, Double>> calculateMonthlyStats(TransactionColumns columns) {
         Map<String, Map<String, Double>> monthlyStats = new TreeMap<>();
+        int n = columns.size();
+        if (n == 0) {
+            return monthlyStats;
+        }
         
-        // 按月份分组
-        Map<String, List<Transaction>> monthlyTransactions = transactions.stream()
-                .collect(Collectors.groupingBy(
-                    t -> t.getDate().format(MONTH_FORMATTER)
-                ));
+        // 第一遍确定月份范围，第二遍按月累加
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int day = columns.getEpochDay(i);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+        int firstMonth = monthIndex(minDay);
+        int monthCount = monthIndex(maxDay) - firstMonth + 1;
+        long[] income = new long[monthCount];
+        long[] expense = new long[monthCount];
+        boolean[] present = new boolean[monthCount];
         
-        // 计算每个月的收支
-        monthlyTransactions.forEach((month, monthTransactions) -> {
-            Map<String, Double> stats = new HashMap<>();
-            stats.put("income", calculateTotalIncome(monthTransactions));
-            stats.put("expense", calculateTotalExpense(monthTransactions));
-            monthlyStats.put(month, stats);
-        });
+        // 相邻行通常是同一天，缓存上一行的月份
+        int lastDay = minDay;
+        int lastMonth = 0;
+        for (int i = 0; i < n; i++) {
+            int day = columns.getEpochDay(i);
+            if (day != lastDay) {
+                lastDay = day;
+                lastMonth = monthIndex(day) - firstMonth;
+            }
+            long amount = columns.getAmountCents(i);
+            if (amount > 0) {
+                income[lastMonth] += amount;
+            } else if (amount < 0) {
+                expense[lastMonth] += amount;
+            }
+            present[lastMonth] = true;
+        }
         
+        for (int month = 0; month < monthCount; month++) {
+            if (present[month]) {
+                int index = firstMonth + month;
+                Map<String, Double> stats = new HashMap<>();
+                stats.put("income", income[month] / 100.0);
+                stats.put("expense", expense[month] / 100.0);
+                monthlyStats.put(YearMonth.of(Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1)
+                        .format(MONTH_FORMATTER), stats);
+            }
+        }
         return monthlyStats;
     }
     
     /**
      * 计算余额趋势
-     * @param transactions 交易记录列表
-     * @return 余额趋势映射
+     * @param columns 列式交易数据
+     * @return 余额趋势映射，值为截至当天（含）的累计余额
      */
-    public static Map<String, Double> calculateBalanceTrend(List<Transaction> transactions) {
-        // 按日期排序
-        List<Transaction> sortedTransactions = transactions.stream()
-                .sorted(Comparator.comparing(Transaction::getDate))
-                .collect(Collectors.toList());
-        
-        // 计算每日余额
+    public static Map<String, Double> calculateBalanceTrend(TransactionColumns columns) {
         Map<String, Double> balanceTrend = new TreeMap<>();
-        double balance = 0;
+        int n = columns.size();
+        if (n == 0) {
+            return balanceTrend;
+        }
         
-        for (Transaction transaction : sortedTransactions) {
-            balance += transaction.getAmount();
-            balanceTrend.put(transaction.getDate().format(DATE_FORMATTER), balance);
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int day = columns.getEpochDay(i);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
         }
         
+        long span = (long) maxDay - minDay + 1;
+        if (span <= Math.max(4L * n, 1 << 16)) {
+            // 日期范围不大时按天累加，不需要排序
+            long[] daily = new long[(int) span];
+            boolean[] present = new boolean[(int) span];
+            for (int i = 0; i < n; i++) {
+                int offset = columns.getEpochDay(i) - minDay;
+                daily[offset] += columns.getAmountCents(i);
+                present[offset] = true;
+            }
+            long balance = 0;
+            for (int offset = 0; offset < span; offset++) {
+                if (present[offset]) {
+                    balance += daily[offset];
+                    balanceTrend.put(LocalDate.ofEpochDay((long) minDay + offset).format(DATE_FORMATTER), balance / 100.0);
+                }
+            }
+        } else {
+            // 日期稀疏时将(日期偏移, 行号)打包成long排序
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = ((long) columns.getEpochDay(i) - minDay) << 32 | i;
+            }
+            Arrays.sort(keys);
+            long balance = 0;
+            for (int k = 0; k < n; k++) {
+                balance += columns.getAmountCents((int) keys[k]);
+                if (k + 1 == n || keys[k + 1] >>> 32 != keys[k] >>> 32) {
+                    balanceTrend.put(LocalDate.ofEpochDay(minDay + (keys[k] >>> 32)).format(DATE_FORMATTER), balance / 100.0);
+                }
+            }
+        }
         return balanceTrend;
     }
+    
+    /**
+     * 将epoch day转换为月份序号（年 * 12 + 月 - 1），不创建LocalDate
+     * @param epochDay 日期的epoch day
+     * @return 月份序号
+     */
+    static int monthIndex(int epochDay) {
+        // 按3月1日为年初计算，闰日位于年末
+        long zeroDay = epochDay + 719468L;
+        long era = Math.floorDiv(zeroDay, 146097);
+        long dayOfEra = zeroDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long marchMonth = (5 * dayOfYear + 2) / 153;
+        long month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
 } 
\ No newline at end of file
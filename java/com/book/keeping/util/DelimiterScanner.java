@@ -0,0 +1,134 @@
+package com.book.keeping.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CSV结构字符扫描器
+ * 找出一段字节中的分隔符、引号和换行符（\n、\r）的位置，行和字段的切分只需要处理这些位置，
+ * 不必逐字节判断。有jdk.incubator.vector模块时（以--add-modules jdk.incubator.vector启动）
+ * 使用按32或64字节一组比较的向量实现，否则使用逐字节比较的标量实现，两者结果相同。
+ * 实例持有缓冲区，非线程安全。
+ */
+public abstract class DelimiterScanner {
+    /** 每次扫描的最大字节数，位置数组的长度不小于该值即可容纳所有结果 */
+    public static final int BLOCK_SIZE = 64 * 1024;
+    
+    static final byte COMMA = ',';
+    static final byte QUOTE = '"';
+    static final byte LF = '\n';
+    static final byte CR = '\r';
+    
+    final byte delimiter;
+    final byte quote;
+    
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_SCANNER = "com.book.keeping.util.VectorDelimiterScanner";
+    
+    // 向量实现是否可用，只检测一次
+    private static final boolean VECTOR_AVAILABLE = detectVectorSupport();
+    
+    DelimiterScanner(byte delimiter, byte quote) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+    }
+    
+    /**
+     * 扫描结构字符
+     * @param buffer 字节缓冲区，按绝对位置读取
+     * @param from 起始位置（包含）
+     * @param to 结束位置（不包含），to - from不超过BLOCK_SIZE
+     * @param positions 输出的位置数组（绝对位置，升序），长度不小于to - from
+     * @return 找到的位置个数
+     */
+    public abstract int scan(ByteBuffer buffer, int from, int to, int[] positions);
+    
+    /**
+     * @return 当前环境下最快的扫描器，以逗号为分隔符
+     */
+    public static DelimiterScanner create() {
+        return create(COMMA, QUOTE);
+    }
+    
+    /**
+     * @param delimiter 字段分隔符
+     * @param quote 引号字符
+     * @return 当前环境下最快的扫描器
+     */
+    public static DelimiterScanner create(byte delimiter, byte quote) {
+        if (VECTOR_AVAILABLE) {
+            DelimiterScanner scanner = createVector(delimiter, quote);
+            if (scanner != null) {
+                return scanner;
+            }
+        }
+        return new Scalar(delimiter, quote);
+    }
+    
+    /**
+     * @return 标量扫描器，以逗号为分隔符
+     */
+    public static DelimiterScanner scalar() {
+        return new Scalar(COMMA, QUOTE);
+    }
+    
+    /**
+     * @return 向量扫描器，以逗号为分隔符，向量模块不可用时返回null
+     */
+    public static DelimiterScanner vector() {
+        return VECTOR_AVAILABLE ? createVector(COMMA, QUOTE) : null;
+    }
+    
+    /**
+     * @return 是否使用向量实现
+     */
+    public static boolean isVectorized() {
+        return VECTOR_AVAILABLE;
+    }
+    
+    private static boolean detectVectorSupport() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return false;
+        }
+        return createVector(COMMA, QUOTE) != null;
+    }
+    
+    /**
+     * 通过反射创建向量实现，模块未加载时不会链接任何向量类
+     */
+    private static DelimiterScanner createVector(byte delimiter, byte quote) {
+        try {
+            return (DelimiterScanner) Class.forName(VECTOR_SCANNER)
+                    .getDeclaredConstructor(byte.class, byte.class).newInstance(delimiter, quote);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+    
+    /**
+     * @param b 字节
+     * @return 是否为结构字符
+     */
+    final boolean isStructural(byte b) {
+        return b == delimiter || b == quote || b == LF || b == CR;
+    }
+    
+    /**
+     * 逐字节比较的实现
+     */
+    static final class Scalar extends DelimiterScanner {
+        Scalar(byte delimiter, byte quote) {
+            super(delimiter, quote);
+        }
+        
+        @Override
+        public int scan(ByteBuffer buffer, int from, int to, int[] positions) {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (isStructural(buffer.get(i))) {
+                    positions[count++] = i;
+                }
+            }
+            return count;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,199 @@
+package com.book.keeping.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 交易描述的倒排索引
+ * 描述按字母数字切分为小写词，汉字等表意文字每个字单独成词。每个词对应一个按文档编号升序的
+ * 倒排表（int数组）。查询同样切分，每个查询词按前缀匹配，多个查询词取交集，
+ * 代价与匹配到的倒排表长度成正比，不需要逐条比较描述。
+ * 文档编号由add按加入顺序分配，从0开始。
+ */
+public class DescriptionIndex {
+    private static final int[] EMPTY = new int[0];
+    
+    private final Map<String, Postings> postings = new HashMap<>();
+    // 按字典序排列的全部词，用于前缀查找；加入新词后在下次查询时重建
+    private String[] sortedTerms = new String[0];
+    private boolean termsChanged;
+    private int documentCount;
+    
+    /**
+     * 一个词的倒排表
+     */
+    private static final class Postings {
+        int[] documents = new int[4];
+        int size;
+        
+        void add(int document) {
+            // 同一描述中重复出现的词只记录一次
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+    }
+    
+    /**
+     * 加入一条描述
+     * @param description 描述，可以为null；可以是重复使用的字符缓冲区，方法返回后不再引用
+     * @return 分配的文档编号
+     */
+    public int add(CharSequence description) {
+        int document = documentCount++;
+        for (String term : tokenize(description)) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                list = new Postings();
+                postings.put(term, list);
+                termsChanged = true;
+            }
+            list.add(document);
+        }
+        return document;
+    }
+    
+    /**
+     * 查询包含全部查询词（按前缀匹配）的文档
+     * @param query 查询文本
+     * @return 升序的文档编号；查询中没有词时返回空数组
+     */
+    public int[] search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return EMPTY;
+        }
+        if (termsChanged) {
+            sortedTerms = postings.keySet().toArray(new String[0]);
+            Arrays.sort(sortedTerms);
+            termsChanged = false;
+        }
+        
+        int[] result = null;
+        for (String term : terms) {
+            int[] documents = matchPrefix(term);
+            result = result == null ? documents : intersect(result, documents);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 合并以指定前缀开头的所有词的倒排表
+     */
+    private int[] matchPrefix(String prefix) {
+        int from = Arrays.binarySearch(sortedTerms, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        while (to < sortedTerms.length && sortedTerms[to].startsWith(prefix)) {
+            to++;
+        }
+        if (to == from) {
+            return EMPTY;
+        }
+        if (to - from == 1) {
+            Postings list = postings.get(sortedTerms[from]);
+            return Arrays.copyOf(list.documents, list.size);
+        }
+        
+        int total = 0;
+        for (int i = from; i < to; i++) {
+            total += postings.get(sortedTerms[i]).size;
+        }
+        int[] documents = new int[total];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            Postings list = postings.get(sortedTerms[i]);
+            System.arraycopy(list.documents, 0, documents, size, list.size);
+            size += list.size;
+        }
+        Arrays.sort(documents);
+        // 去重
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || documents[unique - 1] != documents[i]) {
+                documents[unique++] = documents[i];
+            }
+        }
+        return Arrays.copyOf(documents, unique);
+    }
+    
+    /**
+     * 求两个升序数组的交集
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+    
+    /**
+     * 将文本切分为小写词
+     * @param text 文本，可以为null
+     * @return 词列表，按出现顺序
+     */
+    public static List<String> tokenize(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = Character.codePointAt(text, i);
+            int next = i + Character.charCount(codePoint);
+            if (Character.isIdeographic(codePoint)) {
+                // 表意文字之间没有分隔符，每个字单独成词
+                if (start >= 0) {
+                    terms.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+                terms.add(text.subSequence(i, next).toString());
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                terms.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i = next;
+        }
+        if (start >= 0) {
+            terms.add(text.subSequence(start, text.length()).toString().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+    
+    /**
+     * @return 已加入的文档数
+     */
+    public int size() {
+        return documentCount;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.book.keeping.util;
+
+/**
+ * 导入选项
+ * 是否跳过标题行只对CSV有效；CSV格式中的编码也用于其他文本格式，
+ * 文件本身声明了编码时（例如OFX的文件头）以文件的声明为准。实例不可变。
+ */
+public final class ImportOptions {
+    /** 跳过标题行，逗号分隔，自动判断编码 */
+    public static final ImportOptions DEFAULT = new ImportOptions(true, CSVFormat.DEFAULT);
+    
+    private final boolean skipHeader;
+    private final CSVFormat format;
+    
+    /**
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     */
+    public ImportOptions(boolean skipHeader, CSVFormat format) {
+        this.skipHeader = skipHeader;
+        this.format = format;
+    }
+    
+    public boolean isSkipHeader() {
+        return skipHeader;
+    }
+    
+    public CSVFormat getFormat() {
+        return format;
+    }
+} 
\ No newline at end of file
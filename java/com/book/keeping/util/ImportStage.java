@@ -0,0 +1,34 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+
+import java.util.List;
+
+/**
+ * 导入流程中的处理阶段
+ * 每批解析出的交易记录在交给界面之前依次经过各阶段，阶段可以直接修改记录。
+ * 在导入任务的后台线程中调用。
+ */
+public interface ImportStage {
+    
+    /**
+     * 处理一批交易记录
+     * @param chunk 交易记录
+     */
+    void process(List<Transaction> chunk);
+    
+    /**
+     * 依次执行多个阶段
+     * @param stages 处理阶段，忽略null
+     * @return 组合后的阶段
+     */
+    static ImportStage of(ImportStage... stages) {
+        return chunk -> {
+            for (ImportStage stage : stages) {
+                if (stage != null) {
+                    stage.process(chunk);
+                }
+            }
+        };
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,293 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * JSON Lines格式导入
+ * 每行一个JSON对象，字段名与Transaction的属性相同：
+ * {"date":"2024-01-01","description":"Grocery Shopping","amount":-50.00,"category":"Groceries","source":"Cash","aiGenerated":false}
+ * date、description和amount必填，amount可以是数字或字符串，按十进制精确解析。
+ * 逐行用手写的拉取式解析器读取，不建立对象树，未知字段（包括嵌套的对象和数组）被跳过。
+ */
+public class JSONLinesImporter extends StreamingImporter {
+    
+    @Override
+    public String getName() {
+        return "JSON Lines";
+    }
+    
+    @Override
+    public List<String> getExtensions() {
+        return List.of("jsonl", "ndjson");
+    }
+    
+    @Override
+    public boolean sniff(byte[] head, int length) {
+        return startsWith(head, length, "{");
+    }
+    
+    @Override
+    protected void read(BufferedReader reader, Sink sink) throws IOException {
+        Parser parser = new Parser();
+        int lineNumber = 0;
+        String line;
+        while (!sink.isStopped() && (line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                sink.add(parser.parse(line));
+            } catch (Exception e) {
+                sink.error("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 单行JSON对象的拉取式解析器，可重复使用
+     */
+    private static final class Parser {
+        private final StringBuilder text = new StringBuilder();
+        private String line;
+        private int position;
+        
+        Transaction parse(String line) throws Exception {
+            this.line = line;
+            this.position = 0;
+            
+            LocalDate date = null;
+            String description = null;
+            String amount = null;
+            String category = null;
+            String source = null;
+            boolean aiGenerated = false;
+            
+            expect('{');
+            if (!consume('}')) {
+                do {
+                    String name = readString();
+                    expect(':');
+                    switch (name) {
+                        case "date":
+                            date = parseDate(readString());
+                            break;
+                        case "description":
+                            description = readNullableString();
+                            break;
+                        case "amount":
+                            amount = peek() == '"' ? readString() : readNumber();
+                            break;
+                        case "category":
+                            category = readNullableString();
+                            break;
+                        case "source":
+                            source = readNullableString();
+                            break;
+                        case "aiGenerated":
+                            aiGenerated = readBoolean();
+                            break;
+                        default:
+                            skipValue();
+                            break;
+                    }
+                } while (consume(','));
+                expect('}');
+            }
+            skipWhitespace();
+            if (position < line.length()) {
+                throw new Exception("Unexpected content after object at column " + (position + 1));
+            }
+            
+            if (date == null) {
+                throw new Exception("Missing field: date");
+            }
+            if (description == null || description.isBlank()) {
+                throw new Exception("Description cannot be empty");
+            }
+            if (amount == null) {
+                throw new Exception("Missing field: amount");
+            }
+            long amountCents;
+            try {
+                amountCents = Money.parse(amount.trim());
+            } catch (NumberFormatException e) {
+                throw new Exception("Invalid amount format: " + amount);
+            }
+            category = category == null || category.isBlank()
+                    ? Constants.UNCATEGORIZED : SymbolTable.CATEGORIES.canonical(category.trim());
+            source = source == null || source.isBlank() ? "Other" : SymbolTable.SOURCES.canonical(source.trim());
+            return Transaction.ofCents(date, description.trim(), amountCents, category, source, aiGenerated);
+        }
+        
+        /**
+         * 日期为yyyy-MM-dd，带时间部分（yyyy-MM-ddTHH:mm:ss）时只取日期
+         */
+        private static LocalDate parseDate(String value) throws Exception {
+            String date = value.length() > 10 && value.charAt(10) == 'T' ? value.substring(0, 10) : value;
+            try {
+                return LocalDate.parse(date);
+            } catch (DateTimeParseException e) {
+                throw new Exception("Invalid date format: " + value);
+            }
+        }
+        
+        private void skipWhitespace() {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+        }
+        
+        private char peek() throws Exception {
+            skipWhitespace();
+            if (position >= line.length()) {
+                throw new Exception("Unexpected end of line");
+            }
+            return line.charAt(position);
+        }
+        
+        private boolean consume(char c) throws Exception {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        private void expect(char c) throws Exception {
+            if (!consume(c)) {
+                throw new Exception("Expected '" + c + "' at column " + (position + 1));
+            }
+        }
+        
+        private String readNullableString() throws Exception {
+            if (peek() == 'n') {
+                readLiteral("null");
+                return null;
+            }
+            return readString();
+        }
+        
+        private String readString() throws Exception {
+            expect('"');
+            text.setLength(0);
+            while (position < line.length()) {
+                char c = line.charAt(position++);
+                if (c == '"') {
+                    return text.toString();
+                }
+                if (c != '\\') {
+                    text.append(c);
+                    continue;
+                }
+                if (position >= line.length()) {
+                    break;
+                }
+                char escaped = line.charAt(position++);
+                if (escaped != 'u') {
+                    text.append(unescape(escaped));
+                    continue;
+                }
+                try {
+                    text.append((char) Integer.parseInt(line.substring(position, position + 4), 16));
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    throw new Exception("Invalid escape at column " + position);
+                }
+                position += 4;
+            }
+            throw new Exception("Unterminated string");
+        }
+        
+        private static char unescape(char c) {
+            switch (c) {
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                default:
+                    return c;
+            }
+        }
+        
+        private String readNumber() throws Exception {
+            skipWhitespace();
+            int start = position;
+            while (position < line.length() && "+-0123456789.eE".indexOf(line.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new Exception("Expected number at column " + (start + 1));
+            }
+            return line.substring(start, position);
+        }
+        
+        private boolean readBoolean() throws Exception {
+            char c = peek();
+            if (c == '"') {
+                return Boolean.parseBoolean(readString());
+            }
+            if (c == 'n') {
+                readLiteral("null");
+                return false;
+            }
+            if (c == 't') {
+                readLiteral("true");
+                return true;
+            }
+            readLiteral("false");
+            return false;
+        }
+        
+        private void readLiteral(String literal) throws Exception {
+            if (!line.startsWith(literal, position)) {
+                throw new Exception("Expected " + literal + " at column " + (position + 1));
+            }
+            position += literal.length();
+        }
+        
+        /**
+         * 跳过任意值，嵌套的对象和数组按括号深度跳过
+         */
+        private void skipValue() throws Exception {
+            char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = peek();
+                    if (c == '"') {
+                        readString();
+                        continue;
+                    }
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else if (c == 't' || c == 'f') {
+                readBoolean();
+            } else if (c == 'n') {
+                readLiteral("null");
+            } else {
+                readNumber();
+            }
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,376 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * OFX/QFX（Open Financial Exchange）导入
+ * 同时支持OFX 1.x的SGML格式（叶子元素没有结束标签）和OFX 2.x的XML格式。
+ * 用手写的拉取式解析器逐个读取标签和文本，只在STMTTRN元素内收集字段，不建立文档树。
+ * 每个STMTTRN导入为一条记录：DTPOSTED为日期，TRNAMT为金额，NAME（没有时为MEMO）为描述；
+ * 信用卡对账单（CCSTMTRS）中的记录来源为Credit Card，银行对账单（STMTRS）中的为Bank Transfer。
+ */
+public class OFXImporter extends StreamingImporter {
+    
+    @Override
+    public String getName() {
+        return "OFX/QFX";
+    }
+    
+    @Override
+    public List<String> getExtensions() {
+        return List.of("ofx", "qfx");
+    }
+    
+    @Override
+    public boolean sniff(byte[] head, int length) {
+        String text = new String(head, 0, length, StandardCharsets.ISO_8859_1).toUpperCase(Locale.ROOT);
+        return text.contains("OFXHEADER") || text.contains("<OFX>");
+    }
+    
+    /**
+     * 按文件头声明的编码读取：SGML文件头的ENCODING/CHARSET，或XML声明的encoding，
+     * 没有声明时按导入选项判断
+     */
+    @Override
+    protected Charset charset(ByteBuffer head, int length, ImportOptions options) {
+        String text = StandardCharsets.ISO_8859_1.decode(head.duplicate()).toString().toUpperCase(Locale.ROOT);
+        if (text.contains("ENCODING:UTF-8") || text.contains("ENCODING=\"UTF-8\"")) {
+            return StandardCharsets.UTF_8;
+        }
+        if (text.contains("CHARSET:1252") && Charset.isSupported("windows-1252")) {
+            return Charset.forName("windows-1252");
+        }
+        if (text.contains("CHARSET:ISO-8859-1") || text.contains("ENCODING=\"ISO-8859-1\"")) {
+            return StandardCharsets.ISO_8859_1;
+        }
+        return super.charset(head, length, options);
+    }
+    
+    @Override
+    protected void read(BufferedReader reader, Sink sink) throws IOException {
+        Tokenizer tokenizer = new Tokenizer(reader);
+        Fields fields = new Fields();
+        String source = "Other";
+        // 最近一个开始标签，之后的文本是它的值
+        String element = null;
+        boolean inTransaction = false;
+        int transactionNumber = 0;
+        
+        int token;
+        while (!sink.isStopped() && (token = tokenizer.next()) != Tokenizer.EOF) {
+            if (token == Tokenizer.START) {
+                element = tokenizer.name;
+                if (element.equals("STMTTRN")) {
+                    if (inTransaction) {
+                        // 上一条缺少结束标签
+                        emit(fields, source, ++transactionNumber, sink);
+                    }
+                    inTransaction = true;
+                    fields.clear();
+                } else if (element.equals("CCSTMTRS")) {
+                    source = "Credit Card";
+                } else if (element.equals("STMTRS")) {
+                    source = "Bank Transfer";
+                }
+            } else if (token == Tokenizer.END) {
+                if (tokenizer.name.equals("STMTTRN") && inTransaction) {
+                    emit(fields, source, ++transactionNumber, sink);
+                    inTransaction = false;
+                }
+                element = null;
+            } else if (inTransaction && element != null) {
+                fields.set(element, tokenizer.text);
+                element = null;
+            }
+        }
+        if (inTransaction && !sink.isStopped()) {
+            emit(fields, source, ++transactionNumber, sink);
+        }
+    }
+    
+    private static void emit(Fields fields, String source, int number, Sink sink) {
+        try {
+            sink.add(fields.toTransaction(source));
+        } catch (Exception e) {
+            sink.error("Transaction " + number + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 解析OFX日期，格式为yyyyMMdd[HHmmss[.XXX]][[时区]]，只取日期部分
+     * @param value 日期文本
+     * @return 日期
+     * @throws Exception 格式错误时抛出
+     */
+    static LocalDate parseDate(String value) throws Exception {
+        try {
+            if (value.length() >= 8) {
+                return LocalDate.of(Integer.parseInt(value.substring(0, 4)), Integer.parseInt(value.substring(4, 6)),
+                        Integer.parseInt(value.substring(6, 8)));
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            // 统一报告为日期格式错误
+        }
+        throw new Exception("Invalid date format: " + value);
+    }
+    
+    /**
+     * 一条STMTTRN中已读取的字段
+     */
+    private static final class Fields {
+        String date;
+        String amount;
+        String name;
+        String memo;
+        
+        void clear() {
+            date = null;
+            amount = null;
+            name = null;
+            memo = null;
+        }
+        
+        void set(String element, String value) {
+            switch (element) {
+                case "DTPOSTED":
+                    date = value;
+                    break;
+                case "TRNAMT":
+                    amount = value;
+                    break;
+                case "NAME":
+                    name = value;
+                    break;
+                case "MEMO":
+                    memo = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        Transaction toTransaction(String source) throws Exception {
+            if (date == null) {
+                throw new Exception("Missing DTPOSTED");
+            }
+            LocalDate parsedDate = parseDate(date);
+            
+            String description = name != null && !name.isEmpty() ? name : memo;
+            if (description == null || description.isEmpty()) {
+                throw new Exception("Description cannot be empty");
+            }
+            
+            if (amount == null) {
+                throw new Exception("Missing TRNAMT");
+            }
+            long amountCents;
+            try {
+                // 部分机构以逗号作小数点
+                amountCents = Money.parse(amount.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                throw new Exception("Invalid amount format: " + amount);
+            }
+            return Transaction.ofCents(parsedDate, description, amountCents, Constants.UNCATEGORIZED,
+                    SymbolTable.SOURCES.canonical(source), false);
+        }
+    }
+    
+    /**
+     * SGML/XML标签和文本的拉取式解析器
+     * 跳过文件头、处理指令、注释和声明；文本去除首尾空白并还原实体，空白文本不返回
+     */
+    static final class Tokenizer {
+        static final int EOF = 0;
+        static final int START = 1;
+        static final int END = 2;
+        static final int TEXT = 3;
+        
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder builder = new StringBuilder();
+        private int position;
+        private int limit;
+        // 是否已读到<OFX>之前的第一个标签，之前的内容是SGML文件头
+        private boolean inBody;
+        
+        /** 当前标签的名称（大写） */
+        String name;
+        /** 当前文本 */
+        String text;
+        
+        Tokenizer(Reader reader) {
+            this.reader = reader;
+        }
+        
+        /**
+         * @return 下一个记号的类型
+         * @throws IOException 读取出错时抛出
+         */
+        int next() throws IOException {
+            while (true) {
+                int c = read();
+                if (c < 0) {
+                    return EOF;
+                }
+                if (c != '<') {
+                    builder.setLength(0);
+                    builder.append((char) c);
+                    while ((c = peek()) >= 0 && c != '<') {
+                        builder.append((char) read());
+                    }
+                    if (!inBody) {
+                        continue;
+                    }
+                    String value = builder.toString().trim();
+                    if (!value.isEmpty()) {
+                        text = decodeEntities(value);
+                        return TEXT;
+                    }
+                    continue;
+                }
+                
+                c = read();
+                if (c == '?' || c == '!') {
+                    skipMarkup(c);
+                    continue;
+                }
+                inBody = true;
+                boolean end = c == '/';
+                builder.setLength(0);
+                if (!end && c >= 0) {
+                    builder.append((char) c);
+                }
+                while ((c = read()) >= 0 && c != '>') {
+                    builder.append((char) c);
+                }
+                String tag = builder.toString().trim();
+                // XML的空元素<TAG/>按开始标签处理，没有文本
+                if (tag.endsWith("/")) {
+                    tag = tag.substring(0, tag.length() - 1).trim();
+                }
+                int space = indexOfWhitespace(tag);
+                name = (space >= 0 ? tag.substring(0, space) : tag).toUpperCase(Locale.ROOT);
+                return end ? END : START;
+            }
+        }
+        
+        /**
+         * 跳过处理指令（<?...?>）、注释（<!--...-->）和声明（<!...>）
+         */
+        private void skipMarkup(int kind) throws IOException {
+            if (kind == '!' && peek() == '-') {
+                int dashes = 0;
+                int c;
+                while ((c = read()) >= 0) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+            int c;
+            do {
+                c = read();
+            } while (c >= 0 && c != '>');
+        }
+        
+        private static int indexOfWhitespace(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (Character.isWhitespace(s.charAt(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        private static String decodeEntities(String value) {
+            int amp = value.indexOf('&');
+            if (amp < 0) {
+                return value;
+            }
+            StringBuilder result = new StringBuilder(value.length());
+            int start = 0;
+            while (amp >= 0) {
+                int semicolon = value.indexOf(';', amp);
+                if (semicolon < 0) {
+                    break;
+                }
+                result.append(value, start, amp);
+                String entity = value.substring(amp + 1, semicolon);
+                String decoded = decodeEntity(entity);
+                result.append(decoded != null ? decoded : value.substring(amp, semicolon + 1));
+                start = semicolon + 1;
+                amp = value.indexOf('&', start);
+            }
+            return result.append(value, start, value.length()).toString();
+        }
+        
+        private static String decodeEntity(String entity) {
+            switch (entity) {
+                case "amp":
+                    return "&";
+                case "lt":
+                    return "<";
+                case "gt":
+                    return ">";
+                case "quot":
+                    return "\"";
+                case "apos":
+                    return "'";
+                case "nbsp":
+                    return " ";
+                default:
+                    break;
+            }
+            try {
+                if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+                }
+                if (entity.startsWith("#")) {
+                    return new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+                }
+            } catch (IllegalArgumentException e) {
+                // 无效的字符引用按原样保留
+            }
+            return null;
+        }
+        
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+        
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+        
+        private boolean fill() throws IOException {
+            int n = reader.read(buffer, 0, buffer.length);
+            if (n <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,366 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 并行CSV导入工具类
+ * 将大文件在换行处切分为若干块，在ForkJoinPool上并行解析后按文件顺序合并。
+ * 每一行的解析规则与CSVImporter完全相同，错误信息中的行号也与顺序导入一致。
+ * 切分时不知道换行符是否在引号内，因此每个块都假定从记录开头开始解析；
+ * 除最后一块外，块末尾仍在引号内说明切分点落在了跨行的字段中，此时改为顺序导入。
+ * 流式导入时各块按文件顺序交给处理器，同时解析的块数有上限，内存占用不随文件大小增长。
+ */
+public class ParallelCSVImporter {
+    // 小于该大小的文件直接顺序导入
+    private static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+    
+    // 每个块的最大字节数，保证单块可以一次映射
+    private static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    
+    // 每个线程分配的块数，块数多于线程数以平衡负载
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    // 查找换行符时每次读取的字节数
+    private static final int SEEK_BLOCK_SIZE = 64 * 1024;
+    
+    // 确定编码时读取的文件开头字节数
+    private static final int HEAD_SIZE = 64 * 1024;
+    
+    // 流式导入时每个线程最多领先处理器解析的块数
+    private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 2;
+    
+    /**
+     * 使用公共ForkJoinPool并行导入CSV文件
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @return 导入结果，交易记录顺序与文件一致
+     */
+    public static CSVImporter.ImportResult importFromCSV(String filePath, boolean skipHeader) {
+        return importFromCSV(filePath, skipHeader, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * 使用指定的ForkJoinPool并行导入CSV文件
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param pool 执行解析任务的线程池
+     * @return 导入结果，交易记录顺序与文件一致
+     */
+    public static CSVImporter.ImportResult importFromCSV(String filePath, boolean skipHeader, ForkJoinPool pool) {
+        return importFromCSV(filePath, skipHeader, CSVFormat.DEFAULT, pool);
+    }
+    
+    /**
+     * 按指定格式使用指定的ForkJoinPool并行导入CSV文件
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @param pool 执行解析任务的线程池
+     * @return 导入结果，交易记录顺序与文件一致
+     */
+    public static CSVImporter.ImportResult importFromCSV(String filePath, boolean skipHeader, CSVFormat format,
+                                                         ForkJoinPool pool) {
+        List<String> errors = new ArrayList<>();
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+                return CSVImporter.importFromCSV(filePath, skipHeader, format);
+            }
+            
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEAD_SIZE);
+            CSVFormat resolved = format.resolve(head, 0, HEAD_SIZE);
+            long start = CSVFormat.bomLength(head, 0, HEAD_SIZE);
+            
+            long[] bounds = splitAtLineBoundaries(channel, start, size, pool.getParallelism() * CHUNKS_PER_THREAD);
+            ChunkResult[] results = new ChunkResult[bounds.length - 1];
+            pool.invoke(new ChunkTask(channel, bounds, results, 0, results.length, skipHeader, resolved));
+            
+            for (ChunkResult result : results) {
+                if (!result.complete) {
+                    return CSVImporter.importFromCSV(filePath, skipHeader, resolved);
+                }
+            }
+            return merge(results);
+        } catch (UncheckedIOException e) {
+            errors.add("Error reading file: " + e.getCause().getMessage());
+        } catch (IOException e) {
+            errors.add("Error reading file: " + e.getMessage());
+        }
+        
+        return new CSVImporter.ImportResult(new ArrayList<>(), errors);
+    }
+    
+    /**
+     * 以流式方式并行导入CSV文件
+     * 各块在线程池中解析，按文件顺序分批交给处理器；某一块的末尾在引号内时，从该块开始改为顺序导入。
+     * 小文件直接顺序导入
+     * @param filePath CSV文件路径
+     * @param skipHeader 是否跳过标题行
+     * @param format CSV格式
+     * @param chunkSize 每批最多包含的记录数
+     * @param handler 批次处理器，在调用线程中执行，返回false时停止导入
+     * @param pool 执行解析任务的线程池
+     * @return 导入结果，只包含错误信息和成功导入的记录数
+     */
+    public static CSVImporter.ImportResult importFromCSV(String filePath, boolean skipHeader, CSVFormat format,
+                                                         int chunkSize, CSVImporter.ChunkHandler handler,
+                                                         ForkJoinPool pool) {
+        List<String> errors = new ArrayList<>();
+        int streamedCount = 0;
+        
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+                return CSVImporter.importFromCSV(filePath, skipHeader, format, chunkSize, handler);
+            }
+            
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEAD_SIZE);
+            CSVFormat resolved = format.resolve(head, 0, HEAD_SIZE);
+            long start = CSVFormat.bomLength(head, 0, HEAD_SIZE);
+            
+            long[] bounds = splitAtLineBoundaries(channel, start, size, pool.getParallelism() * CHUNKS_PER_THREAD);
+            ChunkResult[] results = new ChunkResult[bounds.length - 1];
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[results.length];
+            int inFlight = pool.getParallelism() * CHUNKS_IN_FLIGHT_PER_THREAD;
+            int submitted = 0;
+            int baseLine = 0;
+            try {
+                for (int i = 0; i < results.length; i++) {
+                    for (; submitted < results.length && submitted < i + inFlight; submitted++) {
+                        tasks[submitted] = pool.submit(new ChunkTask(channel, bounds, results, submitted, submitted + 1,
+                                skipHeader, resolved));
+                    }
+                    tasks[i].join();
+                    ChunkResult result = results[i];
+                    results[i] = null;
+                    
+                    if (!result.complete) {
+                        // 之前的块都以记录结束，该块的开头仍是记录开头
+                        CSVImporter.ImportResult rest = CSVImporter.importFromCSV(filePath, skipHeader, resolved,
+                                chunkSize, handler, bounds[i], baseLine);
+                        errors.addAll(rest.getErrors());
+                        streamedCount += rest.getSuccessCount();
+                        break;
+                    }
+                    for (int k = 0; k < result.errorMessages.size(); k++) {
+                        errors.add("Line " + (baseLine + result.errorLines[k]) + ": " + result.errorMessages.get(k));
+                    }
+                    baseLine += result.lineCount;
+                    
+                    
+                    // 按批次交给处理器，进度按块的结束位置计算
+                    int batch = Math.max(1, chunkSize);
+                    boolean stopped = false;
+                    for (int from = 0; from < result.transactions.size() && !stopped; from += batch) {
+                        List<Transaction> chunk = new ArrayList<>(result.transactions.subList(from,
+                                Math.min(from + batch, result.transactions.size())));
+                        streamedCount += chunk.size();
+                        stopped = !handler.onChunk(chunk, bounds[i + 1], size);
+                    }
+                    if (stopped) {
+                        break;
+                    }
+                }
+            } finally {
+                // 提前结束时不再解析尚未开始的块
+                for (int i = 0; i < submitted; i++) {
+                    tasks[i].cancel(false);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            errors.add("Error reading file: " + e.getCause().getMessage());
+        } catch (IOException e) {
+            errors.add("Error reading file: " + e.getMessage());
+        }
+        
+        return new CSVImporter.ImportResult(new ArrayList<>(), errors, streamedCount);
+    }
+    
+    /**
+     * 按文件顺序合并各块的解析结果，并把块内行号换算为文件行号
+     * @param results 各块的解析结果
+     * @return 导入结果
+     */
+    private static CSVImporter.ImportResult merge(ChunkResult[] results) {
+        int total = 0;
+        for (ChunkResult result : results) {
+            total += result.transactions.size();
+        }
+        
+        List<Transaction> transactions = new ArrayList<>(total);
+        List<String> errors = new ArrayList<>();
+        int baseLine = 0;
+        for (ChunkResult result : results) {
+            transactions.addAll(result.transactions);
+            for (int i = 0; i < result.errorMessages.size(); i++) {
+                errors.add("Line " + (baseLine + result.errorLines[i]) + ": " + result.errorMessages.get(i));
+            }
+            baseLine += result.lineCount;
+        }
+        
+        return new CSVImporter.ImportResult(transactions, errors);
+    }
+    
+    /**
+     * 计算块边界，每个边界都位于换行符之后
+     * @param channel 文件通道
+     * @param start 数据的起始位置（BOM之后）
+     * @param size 文件大小
+     * @param targetChunks 期望的块数
+     * @return 边界数组，第一个元素为start，最后一个元素为文件大小
+     * @throws IOException 读取文件出错时抛出
+     */
+    private static long[] splitAtLineBoundaries(FileChannel channel, long start, long size, int targetChunks)
+            throws IOException {
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(PARALLEL_THRESHOLD / 4, size / targetChunks));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+        
+        ByteBuffer block = ByteBuffer.allocate(SEEK_BLOCK_SIZE);
+        long position = start + chunkSize;
+        while (position < size) {
+            long boundary = nextLineStart(channel, block, position, size);
+            if (boundary - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE) {
+                throw new IOException("Line too long near offset " + position);
+            }
+            if (boundary >= size) {
+                break;
+            }
+            bounds.add(boundary);
+            position = boundary + chunkSize;
+        }
+        bounds.add(size);
+        
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+    
+    /**
+     * 从指定位置开始查找下一个\n，返回其后一个字节的位置
+     */
+    private static long nextLineStart(FileChannel channel, ByteBuffer block, long position, long size) throws IOException {
+        while (position < size) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+    
+    /**
+     * 单个块的解析结果，行号为块内行号（从1开始）
+     */
+    private static class ChunkResult {
+        private final List<Transaction> transactions = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+        private int[] errorLines = new int[16];
+        private int lineCount;
+        // 块末尾是否在记录边界上
+        private boolean complete;
+        
+        void addError(int line, String message) {
+            if (errorMessages.size() == errorLines.length) {
+                errorLines = Arrays.copyOf(errorLines, errorLines.length * 2);
+            }
+            errorLines[errorMessages.size()] = line;
+            errorMessages.add(message);
+        }
+    }
+    
+    /**
+     * 解析任务，按块下标二分拆分，叶子任务解析单个块
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final ChunkResult[] results;
+        private final int from;
+        private final int to;
+        private final boolean skipHeader;
+        private final CSVFormat format;
+        
+        ChunkTask(FileChannel channel, long[] bounds, ChunkResult[] results, int from, int to, boolean skipHeader,
+                  CSVFormat format) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.skipHeader = skipHeader;
+            this.format = format;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ChunkTask(channel, bounds, results, from, mid, skipHeader, format),
+                        new ChunkTask(channel, bounds, results, mid, to, skipHeader, format));
+                return;
+            }
+            
+            try {
+                results[from] = parseChunk(from);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        
+        private ChunkResult parseChunk(int index) throws IOException {
+            long start = bounds[index];
+            int length = (int) (bounds[index + 1] - start);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            
+            // 只有第一个块需要跳过标题行
+            boolean skipFirstLine = skipHeader && index == 0;
+            ChunkResult result = new ChunkResult();
+            CSVRecord record = new CSVRecord(format);
+            CSVImporter.LineVisitor visitor = (buf, lineStart, lineEnd, next, separators, separatorCount, quoted) -> {
+                int lineNumber = ++result.lineCount;
+                record.reset(buf, lineStart, lineEnd, separators, separatorCount, quoted);
+                if (record.isBlankLine() || (skipFirstLine && lineNumber == 1)) {
+                    return true;
+                }
+                
+                try {
+                    result.transactions.add(CSVImporter.parseTransaction(record));
+                } catch (Exception e) {
+                    result.addError(lineNumber, e.getMessage());
+                }
+                return true;
+            };
+            // 最后一块之外的块都以换行符结束，不按文件末尾处理，末尾未结束的记录说明切分点在引号内
+            boolean last = index == bounds.length - 2;
+            result.complete = CSVImporter.scanLines(buffer, 0, length, last, format, visitor) == length;
+            return result;
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Money;
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * QIF（Quicken Interchange Format）导入
+ * 逐行读取，每行第一个字符为字段代码：D日期、T金额、P收款方、M备注、L分类，^结束一条记录。
+ * !Type:行决定后续记录的账户类型，映射为来源；分类、类别列表等非交易段被跳过。
+ * 日期按美式的月/日/年解析，支持1/2/24、01/02/2024、1/2'24和yyyy-MM-dd等写法；
+ * 以[开头的分类表示账户间转账，作为未分类处理。
+ */
+public class QIFImporter extends StreamingImporter {
+    
+    @Override
+    public String getName() {
+        return "QIF";
+    }
+    
+    @Override
+    public List<String> getExtensions() {
+        return List.of("qif");
+    }
+    
+    @Override
+    public boolean sniff(byte[] head, int length) {
+        return startsWith(head, length, "!Type:") || startsWith(head, length, "!Account")
+                || startsWith(head, length, "!Option:");
+    }
+    
+    @Override
+    protected void read(BufferedReader reader, Sink sink) throws IOException {
+        Record record = new Record();
+        // 当前段是否为交易记录
+        boolean transactions = true;
+        String source = "Other";
+        int lineNumber = 0;
+        String line;
+        while (!sink.isStopped() && (line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            char code = line.charAt(0);
+            String value = line.substring(1).trim();
+            if (code == '!') {
+                String header = value.toLowerCase(Locale.ROOT);
+                if (header.startsWith("type:")) {
+                    String type = header.substring(5).trim();
+                    transactions = isTransactionType(type);
+                    source = sourceOf(type);
+                } else if (header.startsWith("account")) {
+                    // 账户列表，直到下一个!Type:为止
+                    transactions = false;
+                }
+                record.clear();
+                continue;
+            }
+            if (!transactions) {
+                continue;
+            }
+            if (code == '^') {
+                emit(record, source, sink);
+                record.clear();
+                continue;
+            }
+            
+            if (record.line == 0) {
+                record.line = lineNumber;
+            }
+            switch (code) {
+                case 'D':
+                    record.date = value;
+                    break;
+                case 'T':
+                    record.amount = value;
+                    break;
+                case 'U':
+                    if (record.amount == null) {
+                        record.amount = value;
+                    }
+                    break;
+                case 'P':
+                    record.payee = value;
+                    break;
+                case 'M':
+                    record.memo = value;
+                    break;
+                case 'L':
+                    record.category = value;
+                    break;
+                default:
+                    // 支票号、地址、拆分明细等字段不导入
+                    break;
+            }
+        }
+        // 最后一条记录缺少^时同样导入
+        if (transactions && !sink.isStopped()) {
+            emit(record, source, sink);
+        }
+    }
+    
+    private static void emit(Record record, String source, Sink sink) {
+        if (record.line == 0) {
+            return;
+        }
+        try {
+            sink.add(record.toTransaction(source));
+        } catch (Exception e) {
+            sink.error("Line " + record.line + ": " + e.getMessage());
+        }
+    }
+    
+    private static boolean isTransactionType(String type) {
+        return type.equals("bank") || type.equals("cash") || type.equals("ccard") || type.equals("invst")
+                || type.equals("oth a") || type.equals("oth l");
+    }
+    
+    private static String sourceOf(String type) {
+        switch (type) {
+            case "bank":
+                return "Bank Transfer";
+            case "ccard":
+                return "Credit Card";
+            case "cash":
+                return "Cash";
+            default:
+                return "Other";
+        }
+    }
+    
+    /**
+     * 解析QIF日期
+     * @param value 日期文本
+     * @return 日期
+     * @throws Exception 格式错误时抛出
+     */
+    static LocalDate parseDate(String value) throws Exception {
+        String text = value.replace(" ", "");
+        try {
+            if (text.length() == 10 && text.charAt(4) == '-') {
+                return LocalDate.parse(text);
+            }
+            // 月/日/年，年份前的'表示2000年以后
+            int first = text.indexOf('/');
+            int second = Math.max(text.indexOf('/', first + 1), text.indexOf('\'', first + 1));
+            if (first > 0 && second > first) {
+                int month = Integer.parseInt(text.substring(0, first));
+                int day = Integer.parseInt(text.substring(first + 1, second));
+                String yearText = text.substring(second + 1);
+                int year = Integer.parseInt(yearText);
+                if (yearText.length() <= 2) {
+                    year += text.charAt(second) == '\'' || year < 50 ? 2000 : 1900;
+                }
+                return LocalDate.of(year, month, day);
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            // 统一报告为日期格式错误
+        }
+        throw new Exception("Invalid date format: " + value);
+    }
+    
+    /**
+     * 一条记录中已读取的字段
+     */
+    private static final class Record {
+        int line;
+        String date;
+        String amount;
+        String payee;
+        String memo;
+        String category;
+        
+        void clear() {
+            line = 0;
+            date = null;
+            amount = null;
+            payee = null;
+            memo = null;
+            category = null;
+        }
+        
+        Transaction toTransaction(String source) throws Exception {
+            if (date == null) {
+                throw new Exception("Missing date");
+            }
+            LocalDate parsedDate = parseDate(date);
+            
+            String description = payee != null && !payee.isEmpty() ? payee : memo;
+            if (description == null || description.isEmpty()) {
+                throw new Exception("Description cannot be empty");
+            }
+            
+            if (amount == null) {
+                throw new Exception("Missing amount");
+            }
+            long amountCents;
+            try {
+                // 金额可能带千位分隔符
+                amountCents = Money.parse(amount.replace(",", ""));
+            } catch (NumberFormatException e) {
+                throw new Exception("Invalid amount format: " + amount);
+            }
+            
+            String categoryName = category == null || category.isEmpty() || category.startsWith("[")
+                    ? Constants.UNCATEGORIZED : SymbolTable.CATEGORIES.canonical(category);
+            return Transaction.ofCents(parsedDate, description, amountCents, categoryName,
+                    SymbolTable.SOURCES.canonical(source), false);
+        }
+    }
+} 
\ No newline at end of file
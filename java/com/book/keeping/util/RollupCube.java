@@ -0,0 +1,239 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.SymbolTable;
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import javafx.collections.ListChangeListener;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 按(日期, 分类, 来源)预先汇总的交易统计
+ * 每个格子保存收入、支出（分）、各自的笔数和总笔数，每天另有当天的合计。
+ * 分类和来源使用全局字典SymbolTable的编号，按分类分组时直接以编号为数组下标。
+ * 分析视图的各项统计都由日期范围内的格子累加得到，代价与范围内的天数和格子数成正比，
+ * 与交易笔数无关。作为交易列表的监听器随列表变化增量更新。
+ * 更新和查询都在对象锁内进行，可以在后台线程中查询。
+ */
+public class RollupCube implements ListChangeListener<Transaction> {
+    // 格子数组的下标
+    private static final int INCOME = 0;
+    private static final int EXPENSE = 1;
+    private static final int INCOME_COUNT = 2;
+    private static final int EXPENSE_COUNT = 3;
+    private static final int COUNT = 4;
+    
+    // epoch day -> 当天的汇总
+    private final TreeMap<Integer, Day> days = new TreeMap<>();
+    
+    /**
+     * 一天的汇总
+     */
+    private static final class Day {
+        // {收入, 支出, 收入笔数, 支出笔数, 总笔数}
+        final long[] total = new long[5];
+        // (分类编号 << 32 | 来源编号) -> {收入, 支出, 收入笔数, 支出笔数, 总笔数}
+        final Map<Long, long[]> cells = new HashMap<>();
+    }
+    
+    /**
+     * 格子访问器
+     */
+    public interface CellVisitor {
+        /**
+         * @param epochDay 日期的epoch day
+         * @param categoryId 分类在SymbolTable.CATEGORIES中的编号，null为NO_ID
+         * @param sourceId 来源在SymbolTable.SOURCES中的编号，null为NO_ID
+         * @param incomeCents 收入（分）
+         * @param expenseCents 支出（分，负数）
+         * @param incomeCount 收入笔数
+         * @param expenseCount 支出笔数
+         */
+        void visit(int epochDay, int categoryId, int sourceId, long incomeCents, long expenseCents,
+                   long incomeCount, long expenseCount);
+    }
+    
+    /**
+     * 按列式数据重建
+     * @param columns 列式交易数据
+     */
+    public synchronized void reset(TransactionColumns columns) {
+        days.clear();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            apply(columns.getEpochDay(i), columns.getAmountCents(i), columns.getCategoryId(i),
+                    columns.getSourceId(i), 1);
+        }
+    }
+    
+    @Override
+    public synchronized void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            for (Transaction transaction : change.getRemoved()) {
+                apply(transaction, -1);
+            }
+            for (Transaction transaction : change.getAddedSubList()) {
+                apply(transaction, 1);
+            }
+        }
+    }
+    
+    private void apply(Transaction transaction, int sign) {
+        apply((int) transaction.getDate().toEpochDay(), transaction.getAmountCents(),
+                SymbolTable.CATEGORIES.id(transaction.getCategory()), SymbolTable.SOURCES.id(transaction.getSource()),
+                sign);
+    }
+    
+    /**
+     * 加入（sign为1）或移除（sign为-1）一条记录
+     */
+    private void apply(int epochDay, long cents, int categoryId, int sourceId, int sign) {
+        Day day = days.computeIfAbsent(epochDay, key -> new Day());
+        long key = (long) categoryId << 32 | (sourceId & 0xFFFFFFFFL);
+        long[] cell = day.cells.computeIfAbsent(key, k -> new long[5]);
+        add(cell, cents, sign);
+        add(day.total, cents, sign);
+        
+        if (cell[COUNT] == 0) {
+            day.cells.remove(key);
+        }
+        if (day.cells.isEmpty()) {
+            days.remove(epochDay);
+        }
+    }
+    
+    private static void add(long[] cell, long cents, int sign) {
+        cell[COUNT] += sign;
+        if (cents > 0) {
+            cell[INCOME] += sign * cents;
+            cell[INCOME_COUNT] += sign;
+        } else if (cents < 0) {
+            cell[EXPENSE] += sign * cents;
+            cell[EXPENSE_COUNT] += sign;
+        }
+    }
+    
+    /**
+     * 取出日期范围内的各天
+     */
+    private NavigableMap<Integer, Day> range(LocalDate startDate, LocalDate endDate) {
+        long from = Math.max(startDate.toEpochDay(), Integer.MIN_VALUE);
+        long to = Math.min(endDate.toEpochDay(), Integer.MAX_VALUE);
+        if (from > to) {
+            return new TreeMap<>();
+        }
+        return days.subMap((int) from, true, (int) to, true);
+    }
+    
+    /**
+     * 遍历日期范围内的全部格子，按日期升序
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @param visitor 格子访问器
+     */
+    public synchronized void forEachCell(LocalDate startDate, LocalDate endDate, CellVisitor visitor) {
+        for (Map.Entry<Integer, Day> entry : range(startDate, endDate).entrySet()) {
+            for (Map.Entry<Long, long[]> cell : entry.getValue().cells.entrySet()) {
+                long[] value = cell.getValue();
+                visitor.visit(entry.getKey(), (int) (cell.getKey() >> 32), (int) (long) cell.getKey(),
+                        value[INCOME], value[EXPENSE], value[INCOME_COUNT], value[EXPENSE_COUNT]);
+            }
+        }
+    }
+    
+    /**
+     * 计算日期范围内的总收入
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 总收入
+     */
+    public synchronized double getTotalIncome(LocalDate startDate, LocalDate endDate) {
+        long cents = 0;
+        for (Day day : range(startDate, endDate).values()) {
+            cents += day.total[INCOME];
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算日期范围内的总支出
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 总支出（负数）
+     */
+    public synchronized double getTotalExpense(LocalDate startDate, LocalDate endDate) {
+        long cents = 0;
+        for (Day day : range(startDate, endDate).values()) {
+            cents += day.total[EXPENSE];
+        }
+        return cents / 100.0;
+    }
+    
+    /**
+     * 计算日期范围内各类别支出
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 类别支出映射（负数），只包含有支出记录的类别
+     */
+    public synchronized Map<String, Double> getCategoryExpenses(LocalDate startDate, LocalDate endDate) {
+        CategoryTotals totals = new CategoryTotals();
+        forEachCell(startDate, endDate, (day, category, source, income, expense, incomeCount, expenseCount) -> {
+            if (expenseCount > 0) {
+                totals.add(category, expense);
+            }
+        });
+        return totals.toMap();
+    }
+    
+    /**
+     * 计算日期范围内的月度收支
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 月份 -> {收入, 支出}（支出为负数），按时间顺序
+     */
+    public synchronized Map<YearMonth, double[]> getMonthlyTotals(LocalDate startDate, LocalDate endDate) {
+        TreeMap<Integer, long[]> months = new TreeMap<>();
+        for (Map.Entry<Integer, Day> entry : range(startDate, endDate).entrySet()) {
+            long[] month = months.computeIfAbsent(DataAnalysisUtil.monthIndex(entry.getKey()), key -> new long[2]);
+            month[INCOME] += entry.getValue().total[INCOME];
+            month[EXPENSE] += entry.getValue().total[EXPENSE];
+        }
+        Map<YearMonth, double[]> result = new TreeMap<>();
+        for (Map.Entry<Integer, long[]> entry : months.entrySet()) {
+            int index = entry.getKey();
+            result.put(YearMonth.of(Math.floorDiv(index, 12), Math.floorMod(index, 12) + 1),
+                    new double[] {entry.getValue()[INCOME] / 100.0, entry.getValue()[EXPENSE] / 100.0});
+        }
+        return result;
+    }
+    
+    /**
+     * 计算日期范围内的余额趋势，从范围开始时的0起累计
+     * @param startDate 开始日期（包含）
+     * @param endDate 结束日期（包含）
+     * @return 日期 -> 截至当天（含）的累计余额，按时间顺序
+     */
+    public synchronized Map<LocalDate, Double> getBalanceTrend(LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, Double> result = new TreeMap<>();
+        long balance = 0;
+        for (Map.Entry<Integer, Day> entry : range(startDate, endDate).entrySet()) {
+            balance += entry.getValue().total[INCOME] + entry.getValue().total[EXPENSE];
+            result.put(LocalDate.ofEpochDay(entry.getKey()), balance / 100.0);
+        }
+        return result;
+    }
+    
+    /**
+     * @return 有交易的天数
+     */
+    public synchronized int getDayCount() {
+        return days.size();
+    }
+} 
\ No newline at end of file
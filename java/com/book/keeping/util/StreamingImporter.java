@@ -0,0 +1,189 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 文本格式导入的公共部分
+ * 按文件开头的字节确定编码后以字符流读取文件，子类在流上逐条解析记录并交给Sink，
+ * Sink负责按批次输出、收集错误和报告以字节计的进度。整个文件不会同时保存在内存中。
+ */
+abstract class StreamingImporter implements TransactionImporter {
+    // 确定编码时读取的字节数
+    private static final int HEAD_SIZE = 4096;
+    
+    // 读取文件的缓冲区大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    @Override
+    public CSVImporter.ImportResult importFrom(Path file, ImportOptions options, int chunkSize,
+                                               CSVImporter.ChunkHandler handler) {
+        List<String> errors = new ArrayList<>();
+        Sink sink = new Sink(chunkSize, handler, errors);
+        
+        byte[] head = new byte[HEAD_SIZE];
+        int length = TransactionImporters.readHead(file, head);
+        ByteBuffer headBuffer = ByteBuffer.wrap(head, 0, length);
+        Charset charset = charset(headBuffer, length, options);
+        
+        try (CountingInputStream in = new CountingInputStream(Files.newInputStream(file))) {
+            sink.input = in;
+            sink.totalBytes = Files.size(file);
+            in.skipNBytes(CSVFormat.bomLength(headBuffer, 0, length));
+            read(new BufferedReader(new InputStreamReader(in, charset), BUFFER_SIZE), sink);
+        } catch (IOException e) {
+            errors.add("Error reading file: " + e.getMessage());
+        }
+        sink.flush();
+        
+        return new CSVImporter.ImportResult(Collections.emptyList(), errors, sink.successCount);
+    }
+    
+    /**
+     * 确定文件的编码，默认按导入选项中的CSV格式判断（UTF-8 BOM、指定的编码或自动判断）
+     * @param head 文件开头的字节
+     * @param length 有效字节数
+     * @param options 导入选项
+     * @return 编码
+     */
+    protected Charset charset(ByteBuffer head, int length, ImportOptions options) {
+        return options.getFormat().resolve(head, 0, length).getCharset();
+    }
+    
+    /**
+     * 逐条解析记录，Sink停止后应尽快返回
+     * @param reader 字符流，已跳过BOM
+     * @param sink 记录输出
+     * @throws IOException 读取出错时抛出
+     */
+    protected abstract void read(BufferedReader reader, Sink sink) throws IOException;
+    
+    /**
+     * 判断文件开头（跳过BOM和空白后）是否以指定文本开始，不区分大小写
+     * @param head 文件开头的字节
+     * @param length 有效字节数
+     * @param prefix ASCII文本
+     * @return 是否匹配
+     */
+    static boolean startsWith(byte[] head, int length, String prefix) {
+        int start = CSVFormat.bomLength(ByteBuffer.wrap(head, 0, length), 0, length);
+        while (start < length && (head[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        if (length - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase((char) head[start + i]) != Character.toLowerCase(prefix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 解析出的记录的去处
+     */
+    static final class Sink {
+        private final int chunkSize;
+        private final CSVImporter.ChunkHandler handler;
+        private final List<String> errors;
+        private List<Transaction> chunk;
+        private CountingInputStream input;
+        private long totalBytes;
+        private int successCount;
+        private boolean stopped;
+        
+        Sink(int chunkSize, CSVImporter.ChunkHandler handler, List<String> errors) {
+            this.chunkSize = Math.max(1, chunkSize);
+            this.handler = handler;
+            this.errors = errors;
+            this.chunk = new ArrayList<>(this.chunkSize);
+        }
+        
+        /**
+         * 输出一条记录，凑满一批时交给处理器
+         * @param transaction 交易记录
+         */
+        void add(Transaction transaction) {
+            chunk.add(transaction);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+        
+        /**
+         * 记录一条错误
+         * @param message 错误信息，包含记录的位置
+         */
+        void error(String message) {
+            errors.add(message);
+        }
+        
+        /**
+         * @return 处理器是否已要求停止
+         */
+        boolean isStopped() {
+            return stopped;
+        }
+        
+        void flush() {
+            if (chunk.isEmpty() || stopped) {
+                return;
+            }
+            List<Transaction> full = chunk;
+            chunk = new ArrayList<>(chunkSize);
+            successCount += full.size();
+            long bytesRead = input != null ? Math.min(input.count, totalBytes) : totalBytes;
+            stopped = !handler.onChunk(full, bytesRead, totalBytes);
+        }
+    }
+    
+    /**
+     * 统计已读取字节数的输入流，字符解码器会预读，进度略超前于已解析的记录
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+} 
\ No newline at end of file
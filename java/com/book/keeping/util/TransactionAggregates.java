@@ -0,0 +1,103 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+import com.book.keeping.model.TransactionColumns;
+import javafx.collections.ListChangeListener;
+
+import java.util.List;
+
+/**
+ * 增量维护的交易统计
+ * 作为交易列表的监听器，每次变化只按新增和删除的记录调整合计，
+ * 代价与变化的记录数成正比。金额以分为单位累加，避免反复加减产生浮点误差。
+ * 只维护主界面需要的总余额、总收入和总支出；按类别和月份的统计由RollupCube提供。
+ */
+public class TransactionAggregates implements ListChangeListener<Transaction> {
+    private long incomeCents;
+    private long expenseCents;
+    private int count;
+    
+    /**
+     * 按列式数据重新计算全部统计
+     * @param columns 列式交易数据
+     */
+    public void reset(TransactionColumns columns) {
+        clear();
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            apply(columns.getAmountCents(i), 1);
+        }
+    }
+    
+    /**
+     * 按交易记录列表重新计算全部统计
+     * @param transactions 交易记录列表
+     */
+    public void reset(List<? extends Transaction> transactions) {
+        clear();
+        for (Transaction transaction : transactions) {
+            apply(transaction.getAmountCents(), 1);
+        }
+    }
+    
+    private void clear() {
+        incomeCents = 0;
+        expenseCents = 0;
+        count = 0;
+    }
+    
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            // 排列变化不影响合计
+            if (change.wasPermutated()) {
+                continue;
+            }
+            for (Transaction transaction : change.getRemoved()) {
+                apply(transaction.getAmountCents(), -1);
+            }
+            for (Transaction transaction : change.getAddedSubList()) {
+                apply(transaction.getAmountCents(), 1);
+            }
+        }
+    }
+    
+    /**
+     * 加入（sign为1）或移除（sign为-1）一条记录
+     */
+    private void apply(long cents, int sign) {
+        count += sign;
+        if (cents > 0) {
+            incomeCents += sign * cents;
+        } else if (cents < 0) {
+            expenseCents += sign * cents;
+        }
+    }
+    
+    /**
+     * @return 记录数
+     */
+    public int getCount() {
+        return count;
+    }
+    
+    /**
+     * @return 总余额
+     */
+    public double getTotalBalance() {
+        return (incomeCents + expenseCents) / 100.0;
+    }
+    
+    /**
+     * @return 总收入
+     */
+    public double getTotalIncome() {
+        return incomeCents / 100.0;
+    }
+    
+    /**
+     * @return 总支出（负数）
+     */
+    public double getTotalExpense() {
+        return expenseCents / 100.0;
+    }
+} 
\ No newline at end of file
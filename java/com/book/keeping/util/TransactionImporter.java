@@ -0,0 +1,79 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 交易记录导入格式的服务接口
+ * 实现类通过META-INF/services注册，由TransactionImporters按扩展名或文件内容选择。
+ * 导入以流式方式进行：解析出的交易记录按批次交给ChunkHandler，出错的记录只记入错误信息，
+ * 不影响其余记录。实现类必须有公共的无参构造函数，实例无状态，可以在多个线程中使用。
+ */
+public interface TransactionImporter {
+    /** 默认的预览实现最多读取的字节数 */
+    int PREVIEW_BYTES = 1024 * 1024;
+    
+    /**
+     * @return 格式名称，显示在文件选择对话框中
+     */
+    String getName();
+    
+    /**
+     * @return 文件扩展名（小写，不含点）
+     */
+    List<String> getExtensions();
+    
+    /**
+     * 根据文件开头的字节判断文件是否为该格式
+     * @param head 文件开头的字节
+     * @param length 有效字节数
+     * @return 是否为该格式
+     */
+    boolean sniff(byte[] head, int length);
+    
+    /**
+     * 以流式方式导入交易记录
+     * @param file 文件路径
+     * @param options 导入选项
+     * @param chunkSize 每批最多包含的记录数
+     * @param handler 批次处理器，返回false时停止导入
+     * @return 导入结果，只包含错误信息和成功导入的记录数
+     */
+    CSVImporter.ImportResult importFrom(Path file, ImportOptions options, int chunkSize,
+                                        CSVImporter.ChunkHandler handler);
+    
+    /**
+     * 预览文件，只解析开头的若干条记录
+     * 默认实现读取文件开头约PREVIEW_BYTES字节，保留其中的前maxRows条记录，
+     * 总记录数按已读取部分的记录密度估算
+     * @param file 文件路径
+     * @param options 导入选项
+     * @param maxRows 最多保留的记录数
+     * @return 预览结果
+     */
+    default CSVImporter.PreviewResult preview(Path file, ImportOptions options, int maxRows) {
+        List<Transaction> transactions = new ArrayList<>();
+        // {已解析的记录数, 已读取字节数, 文件总字节数}
+        long[] progress = new long[3];
+        boolean[] stopped = new boolean[1];
+        CSVImporter.ImportResult result = importFrom(file, options, maxRows, (chunk, bytesRead, totalBytes) -> {
+            int room = maxRows - transactions.size();
+            if (room > 0) {
+                transactions.addAll(chunk.subList(0, Math.min(room, chunk.size())));
+            }
+            progress[0] += chunk.size();
+            progress[1] = bytesRead;
+            progress[2] = totalBytes;
+            stopped[0] = bytesRead >= PREVIEW_BYTES;
+            return !stopped[0];
+        });
+        
+        long sampledRows = progress[0] + result.getErrorCount();
+        boolean complete = !stopped[0];
+        long estimatedRows = complete ? sampledRows : Math.round((double) sampledRows / progress[1] * progress[2]);
+        return new CSVImporter.PreviewResult(transactions, result.getErrors(), estimatedRows, complete);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.book.keeping.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+/**
+ * 已注册的导入格式
+ * 通过ServiceLoader加载META-INF/services中注册的TransactionImporter，只加载一次。
+ * 选择格式时先按扩展名匹配，没有匹配时按注册顺序检查文件内容，都不匹配时按CSV处理。
+ */
+public final class TransactionImporters {
+    // 检查文件内容时读取的字节数
+    private static final int HEAD_SIZE = 4096;
+    
+    private static final List<TransactionImporter> IMPORTERS = load();
+    
+    private TransactionImporters() {
+    }
+    
+    private static List<TransactionImporter> load() {
+        List<TransactionImporter> importers = new ArrayList<>();
+        for (TransactionImporter importer : ServiceLoader.load(TransactionImporter.class)) {
+            importers.add(importer);
+        }
+        // 没有注册文件时（例如资源未打包）至少支持CSV
+        if (importers.isEmpty()) {
+            importers.add(new CSVImporter());
+        }
+        return Collections.unmodifiableList(importers);
+    }
+    
+    /**
+     * @return 全部导入格式，按注册顺序
+     */
+    public static List<TransactionImporter> all() {
+        return IMPORTERS;
+    }
+    
+    /**
+     * 为文件选择导入格式
+     * @param file 文件路径
+     * @return 导入格式
+     */
+    public static TransactionImporter forFile(Path file) {
+        TransactionImporter byExtension = forExtension(file);
+        if (byExtension != null) {
+            return byExtension;
+        }
+        
+        byte[] head = new byte[HEAD_SIZE];
+        int length = readHead(file, head);
+        for (TransactionImporter importer : IMPORTERS) {
+            if (importer.sniff(head, length)) {
+                return importer;
+            }
+        }
+        for (TransactionImporter importer : IMPORTERS) {
+            if (importer instanceof CSVImporter) {
+                return importer;
+            }
+        }
+        return new CSVImporter();
+    }
+    
+    /**
+     * 按扩展名查找导入格式
+     * @param file 文件路径
+     * @return 导入格式，没有匹配时返回null
+     */
+    public static TransactionImporter forExtension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for (TransactionImporter importer : IMPORTERS) {
+            if (importer.getExtensions().contains(extension)) {
+                return importer;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 读取文件开头的字节，读满数组或到文件末尾为止
+     * @param file 文件路径
+     * @param head 输出数组
+     * @return 读取的字节数，读取出错时为0
+     */
+    static int readHead(Path file, byte[] head) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(head);
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read > 0 && buffer.hasRemaining());
+            return buffer.position();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+} 
\ No newline at end of file
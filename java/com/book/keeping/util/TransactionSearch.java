@@ -0,0 +1,282 @@
+package com.book.keeping.util;
+
+import com.book.keeping.model.Transaction;
+import com.book.keeping.store.LazyTransactionList;
+import javafx.collections.ListChangeListener;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按描述搜索交易记录
+ * 描述的倒排索引由build在后台线程上对交易列表的副本建立：快照中的行直接从描述列复制字节解码，
+ * 不创建交易对象。建立期间继续使用之前的索引，列表新增的记录记下来，安装新索引时再加入。
+ * 索引中的文档按快照行号或记录对象查找，与记录在列表中的位置无关，因此按日期插入不影响索引。
+ * 被删除或替换的记录不重建索引：搜索时找不到位置的文档标记为已删除，之后的搜索直接跳过；
+ * 已删除的文档超过一半时needsRebuild提示重新建立。
+ */
+public class TransactionSearch implements ListChangeListener<Transaction> {
+    private static final int[] EMPTY = new int[0];
+    
+    private LazyTransactionList ledger;
+    // 正在使用的索引，尚未建立时为null
+    private Documents documents;
+    // 正在进行的建立编号，建立期间新增的记录按顺序记录在pending中
+    private long buildId;
+    private boolean building;
+    private final List<Transaction> pending = new ArrayList<>();
+    
+    /**
+     * 已建立索引的文档
+     */
+    public static final class Documents {
+        private final DescriptionIndex index = new DescriptionIndex();
+        // 文档编号 -> 日期
+        private int[] days = new int[16];
+        // 快照行号 -> 文档编号（-1表示没有），记录对象 -> 文档编号，用于由列表的位置找到文档
+        private int[] documentOfRow = new int[0];
+        private final Map<Transaction, Integer> documentOfTransaction = new IdentityHashMap<>();
+        // 记录已不在列表中的文档
+        private final BitSet removed = new BitSet();
+        
+        private Documents() {
+        }
+        
+        private void add(int row, Transaction transaction, int day, CharSequence description) {
+            int document = index.add(description);
+            if (document == days.length) {
+                days = Arrays.copyOf(days, document + (document >> 1));
+            }
+            days[document] = day;
+            if (row < 0) {
+                documentOfTransaction.put(transaction, document);
+                return;
+            }
+            if (row >= documentOfRow.length) {
+                int length = documentOfRow.length;
+                documentOfRow = Arrays.copyOf(documentOfRow, Math.max(row + 1, length + (length >> 1)));
+                Arrays.fill(documentOfRow, length, documentOfRow.length, -1);
+            }
+            documentOfRow[row] = document;
+        }
+        
+        private void add(Transaction transaction) {
+            add(-1, transaction, (int) transaction.getDate().toEpochDay(), transaction.getDescription());
+        }
+        
+        /**
+         * 列表中指定位置的记录对应的文档
+         */
+        private int documentAt(LazyTransactionList ledger, int position) {
+            int row = ledger.snapshotRowAt(position);
+            if (row >= 0) {
+                return row < documentOfRow.length ? documentOfRow[row] : -1;
+            }
+            Integer document = documentOfTransaction.get(ledger.get(position));
+            return document == null ? -1 : document;
+        }
+    }
+    
+    /**
+     * 切换搜索的交易列表
+     * 新列表与之前的列表共用快照时继续使用之前的索引，否则在新索引安装前搜索没有结果
+     * @param ledger 交易列表
+     */
+    public void reset(LazyTransactionList ledger) {
+        if (!ledger.sharesSnapshot(this.ledger)) {
+            documents = null;
+        }
+        this.ledger = ledger;
+        buildId++;
+        building = false;
+        pending.clear();
+    }
+    
+    @Override
+    public void onChanged(Change<? extends Transaction> change) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                continue;
+            }
+            // 移除的记录在搜索时找不到位置，届时标记为已删除
+            for (Transaction transaction : change.getAddedSubList()) {
+                if (documents != null) {
+                    documents.add(transaction);
+                }
+                if (building) {
+                    pending.add(transaction);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 开始建立索引，在应用线程上与复制交易列表同时调用
+     * 之后新增的记录在install时加入新索引
+     * @return 本次建立的编号，交给install；再次调用后之前的建立结果被丢弃
+     */
+    public long beginBuild() {
+        building = true;
+        pending.clear();
+        return ++buildId;
+    }
+    
+    /**
+     * 为交易列表建立索引，可以在后台线程上调用
+     * @param ledger 调用beginBuild时交易列表的副本
+     * @return 建立的索引，交给install
+     */
+    public static Documents build(LazyTransactionList ledger) {
+        Documents documents = new Documents();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(256);
+        CharBuffer chars = CharBuffer.allocate(256);
+        for (int i = 0, size = ledger.size(); i < size; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int row = ledger.snapshotRowAt(i);
+            if (row < 0) {
+                documents.add(ledger.get(i));
+                continue;
+            }
+            int length = ledger.snapshotDescriptionLength(row);
+            if (length < 0) {
+                documents.add(row, null, (int) ledger.epochDay(i), null);
+                continue;
+            }
+            // UTF-8解码后的字符数不超过字节数
+            if (length > bytes.capacity()) {
+                bytes = ByteBuffer.allocate(Math.max(length, bytes.capacity() * 2));
+                chars = CharBuffer.allocate(bytes.capacity());
+            }
+            bytes.clear();
+            ledger.copySnapshotDescription(row, bytes);
+            bytes.flip();
+            chars.clear();
+            decoder.reset();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            documents.add(row, null, (int) ledger.epochDay(i), chars);
+        }
+        return documents;
+    }
+    
+    /**
+     * 安装后台建立的索引，在应用线程上调用
+     * @param id beginBuild返回的编号
+     * @param built build的结果
+     * @return 是否已安装；之后又调用了beginBuild或reset时丢弃结果
+     */
+    public boolean install(long id, Documents built) {
+        if (id != buildId || !building) {
+            return false;
+        }
+        for (Transaction transaction : pending) {
+            built.add(transaction);
+        }
+        pending.clear();
+        building = false;
+        documents = built;
+        return true;
+    }
+    
+    /**
+     * 放弃正在进行的建立，继续使用之前的索引
+     * @param id beginBuild返回的编号
+     */
+    public void cancelBuild(long id) {
+        if (id == buildId) {
+            building = false;
+            pending.clear();
+        }
+    }
+    
+    /**
+     * @return 已删除的文档超过一半且没有正在进行的建立时返回true，应重新建立索引
+     */
+    public boolean needsRebuild() {
+        return documents != null && !building
+                && documents.removed.cardinality() > documents.index.size() / 2;
+    }
+    
+    /**
+     * 搜索描述包含全部查询词（按前缀匹配）的记录
+     * 匹配的文档按日期分组，每个日期在列表中二分查找一次，再在当天的记录中找出匹配的位置，
+     * 不创建交易对象，也不需要排序记录。
+     * @param query 查询文本
+     * @return 匹配记录在列表中的位置，升序（即按日期降序）；索引尚未建立时返回空数组
+     */
+    public int[] search(String query) {
+        if (documents == null) {
+            return EMPTY;
+        }
+        int[] matches = documents.index.search(query);
+        BitSet matched = new BitSet();
+        int[] days = new int[matches.length];
+        int count = 0;
+        for (int document : matches) {
+            if (!documents.removed.get(document)) {
+                matched.set(document);
+                days[count++] = documents.days[document];
+            }
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(days, 0, count);
+        
+        int[] positions = new int[count];
+        int found = 0;
+        int size = ledger.size();
+        int position = 0;
+        // 列表按日期降序排列，日期从大到小处理时位置单调递增
+        for (int k = count - 1; k >= 0; k--) {
+            int day = days[k];
+            if (k < count - 1 && day == days[k + 1]) {
+                continue;
+            }
+            position = firstOnOrBefore(day, position);
+            while (position < size && ledger.epochDay(position) == day) {
+                int document = documents.documentAt(ledger, position);
+                if (document >= 0 && matched.get(document)) {
+                    matched.clear(document);
+                    positions[found++] = position;
+                }
+                position++;
+            }
+        }
+        // 剩下的文档对应的记录已不在列表中
+        documents.removed.or(matched);
+        return found == count ? positions : Arrays.copyOf(positions, found);
+    }
+    
+    /**
+     * 二分查找第一个日期不晚于指定日期的位置
+     */
+    private int firstOnOrBefore(long day, int from) {
+        int low = from;
+        int high = ledger.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ledger.epochDay(mid) > day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.book.keeping.util;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 基于jdk.incubator.vector的结构字符扫描器
+ * 先把一段字节批量复制到数组中，再按向量宽度（AVX2为32字节，AVX-512为64字节）一组比较，
+ * 比较结果的位掩码中每个置位对应一个结构字符。只由DelimiterScanner在向量模块可用时通过反射创建。
+ */
+final class VectorDelimiterScanner extends DelimiterScanner {
+    // 位掩码最多64位，更宽的向量退回512位
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= 64
+            ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+    
+    private final byte[] scratch = new byte[BLOCK_SIZE];
+    private final ByteVector delimiters;
+    private final ByteVector quotes;
+    private final ByteVector lineFeeds;
+    private final ByteVector carriageReturns;
+    
+    VectorDelimiterScanner(byte delimiter, byte quote) {
+        super(delimiter, quote);
+        delimiters = ByteVector.broadcast(SPECIES, delimiter);
+        quotes = ByteVector.broadcast(SPECIES, quote);
+        lineFeeds = ByteVector.broadcast(SPECIES, LF);
+        carriageReturns = ByteVector.broadcast(SPECIES, CR);
+    }
+    
+    @Override
+    public int scan(ByteBuffer buffer, int from, int to, int[] positions) {
+        int length = to - from;
+        buffer.get(from, scratch, 0, length);
+        
+        int count = 0;
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            ByteVector bytes = ByteVector.fromArray(SPECIES, scratch, i);
+            VectorMask<Byte> matches = bytes.eq(delimiters).or(bytes.eq(quotes))
+                    .or(bytes.eq(lineFeeds)).or(bytes.eq(carriageReturns));
+            if (!matches.anyTrue()) {
+                continue;
+            }
+            long mask = matches.toLong();
+            while (mask != 0) {
+                positions[count++] = from + i + Long.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+            }
+        }
+        for (; i < length; i++) {
+            if (isStructural(scratch[i])) {
+                positions[count++] = from + i;
+            }
+        }
+        return count;
+    }
+} 
\ No newline at end of file